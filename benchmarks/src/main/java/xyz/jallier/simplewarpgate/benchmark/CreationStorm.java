@@ -0,0 +1,33 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+/**
+ * Players building new gates: each gate gets a frame, then a player places the named sign on it
+ */
+public final class CreationStorm implements Workload {
+    private final int gates;
+    private final int ticks;
+
+    /**
+     * Construct a new storm
+     *
+     * @param gates number of gates to create
+     * @param ticks number of ticks to spread them over
+     */
+    public CreationStorm(int gates, int ticks) {
+        this.gates = gates;
+        this.ticks = Math.max(1, ticks);
+    }
+
+    @Override
+    public boolean tick(Simulation simulation, int tick) {
+        int count = Workload.share(gates, ticks, tick);
+        for (int i = 0; i < count; i++) {
+            int slot = simulation.buildSlot();
+            if (slot < 0) {
+                return false; // The grid is full
+            }
+            simulation.placeSign(simulation.getRandomPlayer(), slot, GateNetwork.getGateName(slot));
+        }
+        return tick + 1 < ticks;
+    }
+}
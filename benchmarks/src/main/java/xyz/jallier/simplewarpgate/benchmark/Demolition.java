@@ -0,0 +1,33 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+/**
+ * Players breaking the frame block behind the sign of random gates
+ */
+public final class Demolition implements Workload {
+    private final int blocks;
+    private final int ticks;
+
+    /**
+     * Construct a new demolition
+     *
+     * @param blocks number of blocks to break
+     * @param ticks  number of ticks to spread them over
+     */
+    public Demolition(int blocks, int ticks) {
+        this.blocks = blocks;
+        this.ticks = Math.max(1, ticks);
+    }
+
+    @Override
+    public boolean tick(Simulation simulation, int tick) {
+        int count = Workload.share(blocks, ticks, tick);
+        for (int i = 0; i < count; i++) {
+            int slot = simulation.getRandomBuiltSlot();
+            if (slot < 0) {
+                return false;
+            }
+            simulation.breakBlock(simulation.getRandomPlayer(), simulation.getNetwork().getStartBlock(slot));
+        }
+        return tick + 1 < ticks;
+    }
+}
@@ -0,0 +1,50 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.jallier.simplewarpgate.Gate;
+import xyz.jallier.simplewarpgate.GateManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing destinations and cycling the selected destination on a sign
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DestinationsBenchmark {
+    @Benchmark
+    public List<Gate> getActiveGates(NetworkState state) {
+        return GateManager.getInstance().getActiveGates();
+    }
+
+    /**
+     * The list a sign shows, read the way the sign renders it: the size and a window of three gates
+     */
+    @Benchmark
+    public void getDestinationWindow(NetworkState state, Blackhole blackhole) {
+        List<Gate> destinations = GateManager.getInstance().getActiveGates(true, state.gate);
+        int size = destinations.size();
+        blackhole.consume(size);
+        int start = size / 2;
+        for (int i = start; i < Math.min(size, start + 3); i++) {
+            blackhole.consume(destinations.get(i));
+        }
+    }
+
+    @Benchmark
+    public Gate selectDestination(NetworkState state) {
+        state.gate.selectDestination();
+        return state.gate.getSelectedDestination();
+    }
+}
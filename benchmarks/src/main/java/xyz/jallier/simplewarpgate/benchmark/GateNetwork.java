@@ -0,0 +1,176 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import xyz.jallier.simplewarpgate.Gate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds gates in a headless world. Gates face north and are laid out on a square grid
+ */
+public final class GateNetwork {
+    /**
+     * Distance between neighbouring gates on the grid
+     */
+    public static final int SPACING = 8;
+    /**
+     * Height of the block the sign is placed against
+     */
+    public static final int START_Y = HeadlessWorld.GROUND_LEVEL + 2;
+
+    private final HeadlessWorld world;
+    private final int columns;
+    private final List<Gate> gates;
+
+    /**
+     * Construct a new network with room for a number of gates
+     *
+     * @param world    the world to build in
+     * @param capacity the number of gates the grid should fit
+     */
+    public GateNetwork(HeadlessWorld world, int capacity) {
+        this.world = world;
+        columns = Math.max(1, (int) Math.ceil(Math.sqrt(capacity)));
+        gates = new ArrayList<>(capacity);
+    }
+
+    /**
+     * Build a network and create a gate in every slot
+     *
+     * @param world     the world to build in
+     * @param gateCount the number of gates
+     * @return the network
+     */
+    public static GateNetwork build(HeadlessWorld world, int gateCount) {
+        GateNetwork network = new GateNetwork(world, gateCount);
+        for (int i = 0; i < gateCount; i++) {
+            network.createGate(i);
+        }
+        return network;
+    }
+
+    /**
+     * Get the block the sign of a slot is placed against
+     *
+     * @param slot the grid slot
+     * @return the start block
+     */
+    public Block getStartBlock(int slot) {
+        return world.getBlockAt(getX(slot), START_Y, getZ(slot));
+    }
+
+    /**
+     * Get the location a player stands at to walk through the portal of a slot
+     *
+     * @param slot the grid slot
+     * @return the location
+     */
+    public Location getPortalLocation(int slot) {
+        return new Location(world.getWorld(), getX(slot) + 1.5, START_Y - 1, getZ(slot) + 0.5);
+    }
+
+    /**
+     * Get the sign block of a slot
+     *
+     * @param slot the grid slot
+     * @return the sign block
+     */
+    public Block getSignBlock(int slot) {
+        return world.getBlockAt(getX(slot), START_Y, getZ(slot) - 1);
+    }
+
+    /**
+     * Get the button block of a slot
+     *
+     * @param slot the grid slot
+     * @return the button block
+     */
+    public Block getButtonBlock(int slot) {
+        return world.getBlockAt(getX(slot) + 3, START_Y, getZ(slot) - 1);
+    }
+
+    /**
+     * Build the obsidian frame and place the sign for a slot, without creating the gate
+     *
+     * @param slot the grid slot
+     */
+    public void buildFrame(int slot) {
+        int x = getX(slot);
+        int z = getZ(slot);
+        for (int dy = -2; dy <= 2; dy++) {
+            int y = START_Y + dy;
+            if (dy == -2 || dy == 2) {
+                world.setType(x + 1, y, z, Material.OBSIDIAN);
+                world.setType(x + 2, y, z, Material.OBSIDIAN);
+            } else {
+                world.setType(x, y, z, Material.OBSIDIAN);
+                world.setType(x + 3, y, z, Material.OBSIDIAN);
+            }
+        }
+        world.placeWallSign(x, START_Y, z - 1, BlockFace.NORTH);
+    }
+
+    /**
+     * Build the frame for a slot and create a gate in it
+     *
+     * @param slot the grid slot
+     * @return the gate, or null if the name was taken
+     */
+    public Gate createGate(int slot) {
+        buildFrame(slot);
+        Gate gate = Gate.createGate(getStartBlock(slot), BlockFace.NORTH, getGateName(slot));
+        if (gate != null) {
+            gates.add(gate);
+        }
+        return gate;
+    }
+
+    /**
+     * Get the name given to the gate in a slot
+     *
+     * @param slot the grid slot
+     * @return the gate name
+     */
+    public static String getGateName(int slot) {
+        return "gate" + slot;
+    }
+
+    /**
+     * Get the gates created by this network, in creation order
+     *
+     * @return list of gates
+     */
+    public List<Gate> getGates() {
+        return gates;
+    }
+
+    /**
+     * Get the world
+     *
+     * @return the world
+     */
+    public HeadlessWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Get the number of slots on the grid
+     *
+     * @return number of slots
+     */
+    public int getSlotCount() {
+        return columns * columns;
+    }
+
+    private int getX(int slot) {
+        return (slot % columns) * SPACING;
+    }
+
+    private int getZ(int slot) {
+        return (slot / columns) * SPACING;
+    }
+}
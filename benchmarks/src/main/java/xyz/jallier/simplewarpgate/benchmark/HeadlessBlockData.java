@@ -0,0 +1,78 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Axis;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
+import org.bukkit.block.data.type.WallSign;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+
+/**
+ * Block data stand-in. Every instance can be cast to the directional and orientable types the plugin uses
+ */
+final class HeadlessBlockData implements InvocationHandler {
+    private final Material material;
+    private BlockFace facing;
+    private Axis axis;
+
+    private HeadlessBlockData(Material material, BlockFace facing, Axis axis) {
+        this.material = material;
+        this.facing = facing;
+        this.axis = axis;
+    }
+
+    /**
+     * Create block data for a material, facing north on the x axis
+     *
+     * @param material the material
+     * @return the block data
+     */
+    static BlockData create(Material material) {
+        return create(material, BlockFace.NORTH, Axis.X);
+    }
+
+    /**
+     * Create block data
+     *
+     * @param material the material
+     * @param facing   the direction the block faces
+     * @param axis     the axis the block is aligned to
+     * @return the block data
+     */
+    static BlockData create(Material material, BlockFace facing, Axis axis) {
+        return Proxies.create(new HeadlessBlockData(material, facing, axis), BlockData.class,
+                WallSign.class, Orientable.class);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getMaterial":
+                return material;
+            case "getFacing":
+                return facing;
+            case "setFacing":
+                facing = (BlockFace) args[0];
+                return null;
+            case "getAxis":
+                return axis;
+            case "setAxis":
+                axis = (Axis) args[0];
+                return null;
+            case "clone":
+                return create(material, facing, axis);
+            case "getAsString":
+            case "toString":
+                return material + "[facing=" + facing + ",axis=" + axis + "]";
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return Proxies.defaultValue(method.getReturnType());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.UUID;
+
+/**
+ * A player stand-in that can be moved around and teleported. Messages sent to the player are counted, not shown
+ */
+public final class HeadlessPlayer implements InvocationHandler {
+    private final String name;
+    private final UUID uuid;
+    private final Player player;
+    private Location location;
+    private boolean sneaking;
+    private boolean online;
+    private int teleports;
+    private int messages;
+
+    /**
+     * Construct a new player
+     *
+     * @param name     name of the player
+     * @param location where the player starts
+     */
+    public HeadlessPlayer(String name, Location location) {
+        this.name = name;
+        uuid = UUID.nameUUIDFromBytes(("HeadlessPlayer:" + name).getBytes());
+        this.location = location.clone();
+        online = true;
+        player = Proxies.create(this, Player.class);
+    }
+
+    /**
+     * Get the Bukkit player
+     *
+     * @return the player
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Move the player without a teleport
+     *
+     * @param location the new location
+     */
+    public void setLocation(Location location) {
+        this.location = location.clone();
+    }
+
+    /**
+     * Get the current location
+     *
+     * @return the location
+     */
+    public Location getLocation() {
+        return location.clone();
+    }
+
+    /**
+     * Set if the player is sneaking
+     *
+     * @param sneaking if the player is sneaking
+     */
+    public void setSneaking(boolean sneaking) {
+        this.sneaking = sneaking;
+    }
+
+    /**
+     * Set if the player is online
+     *
+     * @param online if the player is online
+     */
+    public void setOnline(boolean online) {
+        this.online = online;
+    }
+
+    /**
+     * Get the number of times the player was teleported
+     *
+     * @return number of teleports
+     */
+    public int getTeleports() {
+        return teleports;
+    }
+
+    /**
+     * Get the number of messages sent to the player
+     *
+     * @return number of messages
+     */
+    public int getMessages() {
+        return messages;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+            case "getDisplayName":
+                return name;
+            case "getUniqueId":
+                return uuid;
+            case "getLocation":
+                return location.clone();
+            case "getWorld":
+                return location.getWorld();
+            case "teleport":
+                if (args[0] instanceof Location) {
+                    location = ((Location) args[0]).clone();
+                    teleports++;
+                    return true;
+                }
+                return false;
+            case "sendMessage":
+                messages++;
+                return null;
+            case "isSneaking":
+                return sneaking;
+            case "isOnline":
+                return online;
+            case "hasPermission":
+                return true;
+            case "toString":
+                return "HeadlessPlayer{" + name + "}";
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return uuid.hashCode();
+            default:
+                return Proxies.defaultValue(method.getReturnType());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A server stand-in installed as the Bukkit server, so code calling the static {@link Bukkit} methods works without
+ * a running server. Only the calls the plugin makes are implemented
+ */
+public final class HeadlessServer {
+    private static final Map<String, HeadlessWorld> worlds = new LinkedHashMap<>();
+    private static final Logger logger = Logger.getLogger("SimpleWarpGate-Headless");
+    private static boolean installed = false;
+
+    private HeadlessServer() {
+    }
+
+    /**
+     * Install the server stand-in, if not already installed
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        logger.setLevel(Level.WARNING);
+        Server server = Proxies.create((proxy, method, args) -> handle(method, args), Server.class);
+        Bukkit.setServer(server);
+        installed = true;
+    }
+
+    /**
+     * Create a world, or return the existing world with the same name
+     *
+     * @param name name of the world
+     * @return the world
+     */
+    public static synchronized HeadlessWorld createWorld(String name) {
+        install();
+        HeadlessWorld world = worlds.get(name);
+        if (world == null) {
+            world = new HeadlessWorld(name);
+            worlds.put(name, world);
+        }
+        return world;
+    }
+
+    /**
+     * Create a plugin for calls that need one, such as chunk tickets
+     *
+     * @param name name of the plugin
+     * @return the plugin
+     */
+    public static Plugin createPlugin(String name) {
+        install();
+        return Proxies.create((proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getLogger":
+                    return logger;
+                case "getServer":
+                    return Bukkit.getServer();
+                case "isEnabled":
+                    return true;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return name.hashCode();
+                default:
+                    return Proxies.defaultValue(method.getReturnType());
+            }
+        }, Plugin.class);
+    }
+
+    private static Object handle(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getLogger":
+                return logger;
+            case "getName":
+                return "HeadlessServer";
+            case "getVersion":
+            case "getBukkitVersion":
+                return "1.15.2-R0.1-SNAPSHOT";
+            case "getWorlds":
+                List<World> list = new ArrayList<>();
+                for (HeadlessWorld world : worlds.values()) {
+                    list.add(world.getWorld());
+                }
+                return list;
+            case "getWorld":
+                if (args[0] instanceof String) {
+                    HeadlessWorld world = worlds.get(args[0]);
+                    return world == null ? null : world.getWorld();
+                }
+                for (HeadlessWorld world : worlds.values()) {
+                    if (world.getWorld().getUID().equals((UUID) args[0])) {
+                        return world.getWorld();
+                    }
+                }
+                return null;
+            case "createBlockData":
+                if (args.length == 1 && args[0] instanceof Material) {
+                    return HeadlessBlockData.create((Material) args[0]);
+                }
+                return Proxies.defaultValue(method.getReturnType());
+            case "isPrimaryThread":
+                return true;
+            default:
+                return Proxies.defaultValue(method.getReturnType());
+        }
+    }
+}
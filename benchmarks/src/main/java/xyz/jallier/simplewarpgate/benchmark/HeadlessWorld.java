@@ -0,0 +1,352 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Directional;
+import org.bukkit.entity.Player;
+import xyz.jallier.simplewarpgate.BlockKey;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An in-memory world. Everything below the ground level is stone and everything above is air, unless a block has been
+ * set. Every chunk counts as loaded
+ */
+public final class HeadlessWorld implements InvocationHandler {
+    /**
+     * The first air block above the stone
+     */
+    public static final int GROUND_LEVEL = 63;
+
+    private final String name;
+    private final UUID uid;
+    private final World world;
+    /**
+     * Blocks that differ from the default, keyed by packed position
+     */
+    private final Map<Long, Material> types;
+    private final Map<Long, BlockData> blockData;
+    private final Map<Long, String[]> signLines;
+    private final List<Player> players;
+    private int blockChanges;
+
+    /**
+     * Construct a new world. Use {@link HeadlessServer#createWorld(String)} so the server can find it
+     *
+     * @param name name of the world
+     */
+    HeadlessWorld(String name) {
+        this.name = name;
+        uid = UUID.nameUUIDFromBytes(name.getBytes());
+        types = new HashMap<>();
+        blockData = new HashMap<>();
+        signLines = new HashMap<>();
+        players = new ArrayList<>();
+        world = Proxies.create(this, World.class);
+    }
+
+    /**
+     * Get the Bukkit world
+     *
+     * @return the world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Get name
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get a block. A new block object is returned each time, like the server does
+     *
+     * @param x x position
+     * @param y y position
+     * @param z z position
+     * @return the block
+     */
+    public Block getBlockAt(int x, int y, int z) {
+        return Proxies.create(new HeadlessBlock(x, y, z), Block.class);
+    }
+
+    /**
+     * Get the type of a block
+     *
+     * @param x x position
+     * @param y y position
+     * @param z z position
+     * @return the material
+     */
+    public Material getType(int x, int y, int z) {
+        Material type = types.get(BlockKey.pack(x, y, z));
+        if (type != null) {
+            return type;
+        }
+        return y < GROUND_LEVEL ? Material.STONE : Material.AIR;
+    }
+
+    /**
+     * Set the type of a block, resetting its block data
+     *
+     * @param x    x position
+     * @param y    y position
+     * @param z    z position
+     * @param type the material
+     */
+    public void setType(int x, int y, int z, Material type) {
+        long key = BlockKey.pack(x, y, z);
+        Material defaultType = y < GROUND_LEVEL ? Material.STONE : Material.AIR;
+        if (type == defaultType) {
+            types.remove(key);
+        } else {
+            types.put(key, type);
+        }
+        blockData.remove(key);
+        signLines.remove(key);
+        blockChanges++;
+    }
+
+    /**
+     * Place a wall sign
+     *
+     * @param x      x position
+     * @param y      y position
+     * @param z      z position
+     * @param facing the direction the sign faces
+     */
+    public void placeWallSign(int x, int y, int z, BlockFace facing) {
+        setType(x, y, z, Material.OAK_WALL_SIGN);
+        BlockData data = HeadlessBlockData.create(Material.OAK_WALL_SIGN);
+        ((Directional) data).setFacing(facing);
+        blockData.put(BlockKey.pack(x, y, z), data);
+    }
+
+    /**
+     * Add a player to the player list of the world
+     *
+     * @param player the player
+     */
+    void addPlayer(Player player) {
+        players.add(player);
+    }
+
+    /**
+     * Get the number of blocks changed since the world was created
+     *
+     * @return number of changes
+     */
+    public int getBlockChanges() {
+        return blockChanges;
+    }
+
+    /**
+     * Get the number of blocks that differ from the default
+     *
+     * @return number of blocks
+     */
+    public int getChangedBlockCount() {
+        return types.size();
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getName":
+                return name;
+            case "getUID":
+                return uid;
+            case "getBlockAt":
+                if (args.length == 1) {
+                    Location location = (Location) args[0];
+                    return getBlockAt(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                }
+                return getBlockAt((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+            case "getChunkAt":
+                if (args.length == 2) {
+                    return createChunk((Integer) args[0], (Integer) args[1]);
+                }
+                return Proxies.defaultValue(method.getReturnType());
+            case "isChunkLoaded":
+            case "addPluginChunkTicket":
+            case "removePluginChunkTicket":
+                return true;
+            case "getMaxHeight":
+                return 256;
+            case "getMinHeight":
+                return 0;
+            case "getPlayers":
+                return new ArrayList<>(players);
+            case "toString":
+                return "HeadlessWorld{" + name + "}";
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return uid.hashCode();
+            default:
+                return Proxies.defaultValue(method.getReturnType());
+        }
+    }
+
+    private Chunk createChunk(int chunkX, int chunkZ) {
+        return Proxies.create((proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return chunkX;
+                case "getZ":
+                    return chunkZ;
+                case "getWorld":
+                    return world;
+                case "isLoaded":
+                    return true;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return 31 * chunkX + chunkZ;
+                default:
+                    return Proxies.defaultValue(method.getReturnType());
+            }
+        }, Chunk.class);
+    }
+
+    /**
+     * Block stand-in. Holds only a position; the state lives in the world
+     */
+    private final class HeadlessBlock implements InvocationHandler {
+        private final int x;
+        private final int y;
+        private final int z;
+
+        HeadlessBlock(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getLocation":
+                    return new Location(world, x, y, z);
+                case "getRelative":
+                    if (args.length == 3) {
+                        return getBlockAt(x + (Integer) args[0], y + (Integer) args[1], z + (Integer) args[2]);
+                    }
+                    BlockFace face = (BlockFace) args[0];
+                    int distance = args.length == 2 ? (Integer) args[1] : 1;
+                    return getBlockAt(x + face.getModX() * distance, y + face.getModY() * distance,
+                            z + face.getModZ() * distance);
+                case "getType":
+                    return getType(x, y, z);
+                case "setType":
+                    setType(x, y, z, (Material) args[0]);
+                    return null;
+                case "getBlockData":
+                    return getData();
+                case "setBlockData":
+                    BlockData data = (BlockData) args[0];
+                    setType(x, y, z, data.getMaterial());
+                    blockData.put(BlockKey.pack(x, y, z), data.clone());
+                    return null;
+                case "getState":
+                    return createState();
+                case "getChunk":
+                    return createChunk(x >> 4, z >> 4);
+                case "isEmpty":
+                    return getType(x, y, z) == Material.AIR;
+                case "isLiquid":
+                    Material type = getType(x, y, z);
+                    return type == Material.WATER || type == Material.LAVA;
+                case "isPassable":
+                    return !getType(x, y, z).isSolid();
+                case "toString":
+                    return "HeadlessBlock{" + x + "," + y + "," + z + "}";
+                case "equals":
+                    if (!(args[0] instanceof Block)) {
+                        return false;
+                    }
+                    Block other = (Block) args[0];
+                    return other.getX() == x && other.getY() == y && other.getZ() == z
+                            && other.getWorld() == world;
+                case "hashCode":
+                    return Long.hashCode(BlockKey.pack(x, y, z));
+                default:
+                    return Proxies.defaultValue(method.getReturnType());
+            }
+        }
+
+        private BlockData getData() {
+            BlockData data = blockData.get(BlockKey.pack(x, y, z));
+            return data == null ? HeadlessBlockData.create(getType(x, y, z)) : data.clone();
+        }
+
+        private BlockState createState() {
+            Material type = getType(x, y, z);
+            long key = BlockKey.pack(x, y, z);
+            String[] stored = signLines.get(key);
+            String[] lines = stored == null ? new String[]{"", "", "", ""} : stored.clone();
+            Block block = getBlockAt(x, y, z);
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getLine":
+                        return lines[(Integer) args[0]];
+                    case "setLine":
+                        lines[(Integer) args[0]] = (String) args[1];
+                        return null;
+                    case "getLines":
+                        return lines.clone();
+                    case "update":
+                        if (getType(x, y, z) != type) {
+                            return false;
+                        }
+                        if (type == Material.OAK_WALL_SIGN) {
+                            signLines.put(key, lines.clone());
+                        }
+                        return true;
+                    case "getBlock":
+                        return block;
+                    case "getType":
+                        return type;
+                    case "getWorld":
+                        return world;
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return Proxies.defaultValue(method.getReturnType());
+                }
+            };
+            if (type == Material.OAK_WALL_SIGN) {
+                return Proxies.create(handler, Sign.class);
+            }
+            return Proxies.create(handler, BlockState.class);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import xyz.jallier.simplewarpgate.Gate;
+import xyz.jallier.simplewarpgate.GateManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Players crowding into one gate, such as the spawn hub when an event starts. The first player picks a destination
+ * and opens the portal if needed, then the players walk in and stand in the portal until they are teleported
+ */
+public final class HubRush implements Workload {
+    private final int players;
+    private final int slot;
+    private final int ticks;
+    private final List<Entrant> inPortal;
+    private int joined;
+
+    /**
+     * Construct a new rush
+     *
+     * @param players number of players walking into the portal
+     * @param slot    grid slot of the hub gate
+     * @param ticks   number of ticks over which the players arrive
+     */
+    public HubRush(int players, int slot, int ticks) {
+        this.players = players;
+        this.slot = slot;
+        this.ticks = Math.max(1, ticks);
+        inPortal = new ArrayList<>();
+    }
+
+    @Override
+    public boolean tick(Simulation simulation, int tick) {
+        List<HeadlessPlayer> available = simulation.getPlayers();
+        int total = Math.min(players, available.size());
+        if (tick == 0 && total > 0) {
+            openPortal(simulation, available.get(0));
+        }
+
+        int count = Workload.share(total, ticks, tick);
+        for (int i = 0; i < count; i++) {
+            HeadlessPlayer player = available.get(joined++);
+            player.setLocation(simulation.getNetwork().getPortalLocation(slot));
+            inPortal.add(new Entrant(player));
+        }
+
+        // The server fires a portal event every tick for each player standing in a portal
+        Iterator<Entrant> iterator = inPortal.iterator();
+        while (iterator.hasNext()) {
+            Entrant entrant = iterator.next();
+            if (entrant.player.getTeleports() != entrant.teleports || !simulation.standInPortal(entrant.player)) {
+                iterator.remove(); // Teleported away, or the portal is gone
+            }
+        }
+        return joined < total || !inPortal.isEmpty();
+    }
+
+    /**
+     * Select a destination and activate the portal, the way a player would
+     *
+     * @param simulation the simulation
+     * @param player     the player clicking
+     */
+    private void openPortal(Simulation simulation, HeadlessPlayer player) {
+        Gate hub = GateManager.getInstance().getGate(GateNetwork.getGateName(slot));
+        if (hub == null) {
+            return;
+        }
+        if (hub.getSelectedDestination() == null) {
+            simulation.interact(player, simulation.getNetwork().getSignBlock(slot));
+        }
+        if (!hub.portalIsActive()) {
+            simulation.interact(player, simulation.getNetwork().getButtonBlock(slot));
+        }
+    }
+
+    /**
+     * A player in the portal, with their teleport count on entering
+     */
+    private static final class Entrant {
+        private final HeadlessPlayer player;
+        private final int teleports;
+
+        Entrant(HeadlessPlayer player) {
+            this.player = player;
+            teleports = player.getTeleports();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Location;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerPortalEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.jallier.simplewarpgate.GateManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the gate a player is using, through the portal, button, sign and block break handlers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LookupBenchmark {
+    /**
+     * Events are created once, since the server creates them before the plugin sees them
+     */
+    @State(Scope.Thread)
+    public static class Events {
+        PlayerPortalEvent portalIntoGate;
+        PlayerPortalEvent portalElsewhere;
+        PlayerInteractEvent buttonClick;
+        PlayerInteractEvent signClick;
+        BlockBreakEvent breakElsewhere;
+
+        @Setup(Level.Trial)
+        public void setUp(NetworkState state) {
+            HeadlessPlayer player = state.player;
+            // The gate has no destination, so the handler stops once the gate is found
+            Location inPortal = state.network.getPortalLocation(state.slot);
+            player.setLocation(inPortal);
+            portalIntoGate = new PlayerPortalEvent(player.getPlayer(), inPortal, inPortal);
+            HeadlessPlayer wanderer = new HeadlessPlayer("wanderer", new Location(state.world.getWorld(),
+                    -1000.5, HeadlessWorld.GROUND_LEVEL, -1000.5));
+            portalElsewhere = new PlayerPortalEvent(wanderer.getPlayer(), wanderer.getLocation(),
+                    wanderer.getLocation());
+            buttonClick = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null,
+                    state.network.getButtonBlock(state.slot), BlockFace.NORTH);
+            signClick = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null,
+                    state.network.getSignBlock(state.slot), BlockFace.NORTH);
+            breakElsewhere = new BlockBreakEvent(state.world.getBlockAt(-1000, HeadlessWorld.GROUND_LEVEL - 1, -1000),
+                    player.getPlayer());
+        }
+    }
+
+    @Benchmark
+    public void portalIntoGate(NetworkState state, Events events) {
+        state.listener.onPlayerPortalEvent(events.portalIntoGate);
+    }
+
+    @Benchmark
+    public void portalElsewhere(NetworkState state, Events events) {
+        state.listener.onPlayerPortalEvent(events.portalElsewhere);
+    }
+
+    @Benchmark
+    public void buttonClick(NetworkState state, Events events) {
+        state.listener.onGateButtonClick(events.buttonClick);
+    }
+
+    /**
+     * Clicking the sign also cycles the destination, see {@link DestinationsBenchmark} for that part alone
+     */
+    @Benchmark
+    public void signClick(NetworkState state, Events events) {
+        state.listener.onSignInteract(events.signClick);
+    }
+
+    @Benchmark
+    public void blockBreakElsewhere(NetworkState state, Events events) {
+        state.listener.onBlockBreakEvent(events.breakElsewhere);
+    }
+
+    @Benchmark
+    public void getGateAt(NetworkState state, Events events, Blackhole blackhole) {
+        blackhole.consume(GateManager.getInstance().getGateAt(events.signClick.getClickedBlock()));
+    }
+}
@@ -0,0 +1,36 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+/**
+ * Explosions centred on random gate frames, such as a TNT raid on a gate network
+ */
+public final class MassExplosions implements Workload {
+    private final int explosions;
+    private final int radius;
+    private final int ticks;
+
+    /**
+     * Construct a new set of explosions
+     *
+     * @param explosions number of explosions
+     * @param radius     radius of the cube of blocks each explosion destroys
+     * @param ticks      number of ticks to spread them over
+     */
+    public MassExplosions(int explosions, int radius, int ticks) {
+        this.explosions = explosions;
+        this.radius = radius;
+        this.ticks = Math.max(1, ticks);
+    }
+
+    @Override
+    public boolean tick(Simulation simulation, int tick) {
+        int count = Workload.share(explosions, ticks, tick);
+        for (int i = 0; i < count; i++) {
+            int slot = simulation.getRandomBuiltSlot();
+            if (slot < 0) {
+                return false;
+            }
+            simulation.explode(simulation.getNetwork().getStartBlock(slot), radius);
+        }
+        return tick + 1 < ticks;
+    }
+}
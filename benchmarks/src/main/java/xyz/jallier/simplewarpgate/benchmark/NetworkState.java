@@ -0,0 +1,41 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Location;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import xyz.jallier.simplewarpgate.Gate;
+import xyz.jallier.simplewarpgate.MainListener;
+
+/**
+ * A headless world holding a network of gates, shared by the benchmarks. Each gate count runs in its own fork, so the
+ * plugin singletons start empty every time
+ */
+@State(Scope.Benchmark)
+public class NetworkState {
+    @Param({"10", "1000", "100000"})
+    public int gateCount;
+
+    public HeadlessWorld world;
+    public GateNetwork network;
+    public MainListener listener;
+    /**
+     * Slot of a gate in the middle of the network, used for lookups
+     */
+    public int slot;
+    public Gate gate;
+    public HeadlessPlayer player;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = HeadlessServer.createWorld("world");
+        network = GateNetwork.build(world, gateCount);
+        listener = new MainListener();
+        slot = gateCount / 2;
+        gate = network.getGates().get(slot);
+        Location start = network.getPortalLocation(slot);
+        player = new HeadlessPlayer("player", start);
+    }
+}
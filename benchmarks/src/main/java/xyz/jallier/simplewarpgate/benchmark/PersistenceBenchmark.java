@@ -0,0 +1,92 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jallier.simplewarpgate.Gate;
+import xyz.jallier.simplewarpgate.GateDataFile;
+import xyz.jallier.simplewarpgate.GateDataLoader;
+import xyz.jallier.simplewarpgate.GateRecord;
+import xyz.jallier.simplewarpgate.LoadReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the gate data file
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PersistenceBenchmark {
+    @State(Scope.Benchmark)
+    public static class DataFiles {
+        File directory;
+        File dataFile;
+        File writeFile;
+        List<GateRecord> records;
+        GateDataLoader loader;
+
+        @Setup(Level.Trial)
+        public void setUp(NetworkState state) throws IOException {
+            directory = Files.createTempDirectory("swg-bench").toFile();
+            dataFile = new File(directory, "SimpleWarpGate.dat");
+            writeFile = new File(directory, "write.dat");
+            records = snapshot(state.network.getGates());
+            GateDataFile.write(dataFile, records);
+            loader = new GateDataLoader(new File(directory, "SimpleWarpGate.rejected"));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    /**
+     * Take a record of every gate, as compaction and saving do
+     */
+    @Benchmark
+    public List<GateRecord> snapshot(NetworkState state) {
+        return snapshot(state.network.getGates());
+    }
+
+    @Benchmark
+    public void save(DataFiles files) throws IOException {
+        GateDataFile.write(files.writeFile, files.records);
+    }
+
+    @Benchmark
+    public List<GateRecord> load(DataFiles files) throws IOException {
+        return files.loader.load(files.dataFile, new LoadReport());
+    }
+
+    private static List<GateRecord> snapshot(List<Gate> gates) {
+        List<GateRecord> records = new ArrayList<>(gates.size());
+        for (Gate gate : gates) {
+            records.add(GateRecord.fromGate(gate));
+        }
+        return records;
+    }
+}
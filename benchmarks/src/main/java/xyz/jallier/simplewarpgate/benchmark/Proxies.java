@@ -0,0 +1,63 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * Helpers for the proxy based stand-ins for the Bukkit interfaces
+ */
+final class Proxies {
+    private Proxies() {
+    }
+
+    /**
+     * Create a proxy implementing some interfaces
+     *
+     * @param handler    the handler for every call
+     * @param type       the interface returned
+     * @param interfaces any other interfaces to implement
+     * @param <T>        type of the returned interface
+     * @return the proxy
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T create(InvocationHandler handler, Class<T> type, Class<?>... interfaces) {
+        Class<?>[] all = new Class<?>[interfaces.length + 1];
+        all[0] = type;
+        System.arraycopy(interfaces, 0, all, 1, interfaces.length);
+        return (T) Proxy.newProxyInstance(Proxies.class.getClassLoader(), all, handler);
+    }
+
+    /**
+     * Get the value a stand-in returns for a method it does not implement
+     *
+     * @param type the method return type
+     * @return zero, false or null
+     */
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,366 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerPortalEvent;
+import xyz.jallier.simplewarpgate.ChunkPrewarmer;
+import xyz.jallier.simplewarpgate.FlightRecorder;
+import xyz.jallier.simplewarpgate.GateMaterialiser;
+import xyz.jallier.simplewarpgate.MainListener;
+import xyz.jallier.simplewarpgate.PortalBlockWriter;
+import xyz.jallier.simplewarpgate.PortalIdleTimer;
+import xyz.jallier.simplewarpgate.PortalTraffic;
+import xyz.jallier.simplewarpgate.SignRenderScheduler;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Plays workloads against a gate network in a headless world, tick by tick, the way a server would: workloads send
+ * events to the listener, then the plugin's repeating tasks run. Only the time spent in the plugin and the memory it
+ * allocates are counted, not the cost of making the events
+ */
+public final class Simulation {
+    /**
+     * Ticks between chunk prewarmer sweeps, as scheduled by the plugin
+     */
+    private static final int PREWARM_SWEEP_INTERVAL_TICKS = 20;
+
+    private final String name;
+    private final int startingGates;
+    private final HeadlessWorld world;
+    private final GateNetwork network;
+    private final MainListener listener;
+    private final List<HeadlessPlayer> players;
+    private final Random random;
+    private final List<Scheduled> scheduled;
+    private final List<Scheduled> running;
+    private final com.sun.management.ThreadMXBean threads;
+    private final long threadId;
+    private final long allocationOverhead;
+    private int builtSlots;
+    private int tick;
+    private long tickNanos;
+    private long tickBytes;
+    private int tickCalls;
+
+    /**
+     * Construct a new simulation, building the starting gates. The plugin singletons are shared by the whole JVM, so
+     * only one simulation should be made per run
+     *
+     * @param name      name of the workload, for the report
+     * @param gateCount number of gates to start with
+     * @param capacity  number of gates the grid should fit, including ones created later
+     * @param players   number of players
+     * @param seed      seed for choosing gates and players
+     */
+    public Simulation(String name, int gateCount, int capacity, int players, long seed) {
+        this.name = name;
+        startingGates = gateCount;
+        world = HeadlessServer.createWorld("simulation");
+        network = new GateNetwork(world, Math.max(gateCount, capacity));
+        listener = new MainListener();
+        this.players = new ArrayList<>(players);
+        random = new Random(seed);
+        scheduled = new ArrayList<>();
+        running = new ArrayList<>();
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) threadBean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+        threadId = Thread.currentThread().getId();
+
+        ChunkPrewarmer.getInstance().start(HeadlessServer.createPlugin("SimpleWarpGate"));
+        for (int i = 0; i < gateCount; i++) {
+            network.createGate(i);
+        }
+        builtSlots = gateCount;
+        for (int i = 0; i < players; i++) {
+            this.players.add(new HeadlessPlayer("player" + i,
+                    new Location(world.getWorld(), -16.5, HeadlessWorld.GROUND_LEVEL, -16.5)));
+        }
+        // Place the starting gates and draw their signs before anything is measured
+        GateMaterialiser materialiser = GateMaterialiser.getInstance();
+        while (materialiser.getQueuedCount() > 0) {
+            materialiser.flush(Integer.MAX_VALUE);
+        }
+        while (PortalBlockWriter.getInstance().getQueuedCount() > 0) {
+            PortalBlockWriter.getInstance().flush(Integer.MAX_VALUE);
+        }
+        while (SignRenderScheduler.getInstance().hasPendingWork()) {
+            SignRenderScheduler.getInstance().flush(Integer.MAX_VALUE);
+        }
+        FlightRecorder.getInstance().takeWork();
+        allocationOverhead = calibrateAllocation();
+    }
+
+    /**
+     * Start a workload at a tick
+     *
+     * @param startTick the tick to start at
+     * @param workload  the workload
+     */
+    public void schedule(int startTick, Workload workload) {
+        scheduled.add(new Scheduled(startTick, workload));
+    }
+
+    /**
+     * Run the simulation for a number of ticks
+     *
+     * @param ticks number of ticks
+     * @return what the plugin cost each tick
+     */
+    public SimulationReport run(int ticks) {
+        scheduled.sort((a, b) -> Integer.compare(a.startTick, b.startTick));
+        SimulationReport.Baseline baseline = new SimulationReport.Baseline();
+        long[] nanos = new long[ticks];
+        long[] bytes = new long[ticks];
+        int[] calls = new int[ticks];
+        int next = 0;
+        for (int i = 0; i < ticks; i++) {
+            tickNanos = 0;
+            tickBytes = 0;
+            tickCalls = 0;
+            while (next < scheduled.size() && scheduled.get(next).startTick <= tick) {
+                running.add(scheduled.get(next++));
+            }
+            for (int j = 0; j < running.size(); j++) {
+                Scheduled workload = running.get(j);
+                if (!workload.workload.tick(this, tick - workload.startTick)) {
+                    running.remove(j--);
+                }
+            }
+            runTask(GateMaterialiser.getInstance());
+            runTask(SignRenderScheduler.getInstance());
+            runTask(PortalBlockWriter.getInstance());
+            runTask(PortalTraffic.getInstance());
+            runTask(PortalIdleTimer.getInstance());
+            if (tick % PREWARM_SWEEP_INTERVAL_TICKS == 0) {
+                runTask(ChunkPrewarmer.getInstance());
+            }
+            FlightRecorder.getInstance().takeWork(); // Nothing reads the tick work here, so clear it
+            nanos[i] = tickNanos;
+            bytes[i] = tickBytes;
+            calls[i] = tickCalls;
+            tick++;
+        }
+        return new SimulationReport(name, startingGates, players.size(), nanos, bytes, calls, threads != null,
+                baseline);
+    }
+
+    /**
+     * Place a named sign on the frame in a slot, as a player creating a gate
+     *
+     * @param player   the player placing the sign
+     * @param slot     the grid slot, which should already have a frame
+     * @param gateName the first line of the sign
+     */
+    public void placeSign(HeadlessPlayer player, int slot, String gateName) {
+        SignChangeEvent event = new SignChangeEvent(network.getSignBlock(slot), player.getPlayer(),
+                new String[]{gateName, "", "", ""});
+        long start = startCall();
+        listener.onSignChange(event);
+        endCall(start);
+    }
+
+    /**
+     * Right click a block. Every interact handler sees the event, as on a server
+     *
+     * @param player the player clicking
+     * @param block  the clicked block
+     */
+    public void interact(HeadlessPlayer player, Block block) {
+        PlayerInteractEvent event = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null, block,
+                BlockFace.NORTH);
+        long start = startCall();
+        listener.onGateButtonClick(event);
+        listener.onSignInteract(event);
+        endCall(start);
+    }
+
+    /**
+     * Send a portal event for a player, if they are standing in a portal block
+     *
+     * @param player the player
+     * @return false if the player is not in a portal
+     */
+    public boolean standInPortal(HeadlessPlayer player) {
+        Location location = player.getLocation();
+        if (world.getType(location.getBlockX(), location.getBlockY(), location.getBlockZ()) != Material.NETHER_PORTAL) {
+            return false;
+        }
+        PlayerPortalEvent event = new PlayerPortalEvent(player.getPlayer(), location, location);
+        long start = startCall();
+        listener.onPlayerPortalEvent(event);
+        endCall(start);
+        return true;
+    }
+
+    /**
+     * Break a block as a player. The block is removed after the handlers run
+     *
+     * @param player the player breaking the block
+     * @param block  the block
+     */
+    public void breakBlock(HeadlessPlayer player, Block block) {
+        BlockBreakEvent event = new BlockBreakEvent(block, player.getPlayer());
+        long start = startCall();
+        listener.onBlockBreakEvent(event);
+        endCall(start);
+        world.setType(block.getX(), block.getY(), block.getZ(), Material.AIR);
+    }
+
+    /**
+     * Explode every non-air block in a cube. The blocks are removed after the handlers run
+     *
+     * @param centre the centre of the explosion
+     * @param radius the distance from the centre to the sides of the cube
+     */
+    public void explode(Block centre, int radius) {
+        List<Block> blocks = new ArrayList<>();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                for (int dz = -radius; dz <= radius; dz++) {
+                    int x = centre.getX() + dx;
+                    int y = centre.getY() + dy;
+                    int z = centre.getZ() + dz;
+                    if (world.getType(x, y, z) != Material.AIR) {
+                        blocks.add(world.getBlockAt(x, y, z));
+                    }
+                }
+            }
+        }
+        BlockExplodeEvent event = new BlockExplodeEvent(centre, blocks, 1.0F);
+        long start = startCall();
+        listener.onBlockExplode(event);
+        endCall(start);
+        for (Block block : blocks) {
+            world.setType(block.getX(), block.getY(), block.getZ(), Material.AIR);
+        }
+    }
+
+    /**
+     * Build the frame for the next empty slot on the grid
+     *
+     * @return the slot, or -1 if the grid is full
+     */
+    public int buildSlot() {
+        if (builtSlots >= network.getSlotCount()) {
+            return -1;
+        }
+        int slot = builtSlots++;
+        network.buildFrame(slot);
+        return slot;
+    }
+
+    /**
+     * Pick a slot that has had a frame built in it
+     *
+     * @return the slot, or -1 if none have
+     */
+    public int getRandomBuiltSlot() {
+        return builtSlots == 0 ? -1 : random.nextInt(builtSlots);
+    }
+
+    /**
+     * Pick a player
+     *
+     * @return the player
+     */
+    public HeadlessPlayer getRandomPlayer() {
+        return players.get(random.nextInt(players.size()));
+    }
+
+    /**
+     * Get the players, in the order they were created
+     *
+     * @return list of players
+     */
+    public List<HeadlessPlayer> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    /**
+     * Get the network
+     *
+     * @return the network
+     */
+    public GateNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Get the current tick
+     *
+     * @return ticks since the simulation started
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    private void runTask(Runnable task) {
+        long start = startCall();
+        task.run();
+        endCall(start);
+    }
+
+    private long startCall() {
+        tickBytes -= getAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    private void endCall(long start) {
+        tickNanos += System.nanoTime() - start;
+        tickBytes += getAllocatedBytes() - allocationOverhead;
+        tickCalls++;
+    }
+
+    private long getAllocatedBytes() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(threadId);
+    }
+
+    /**
+     * Find how much reading the allocation counter twice allocates by itself, so it can be left out
+     *
+     * @return bytes allocated by the measurement
+     */
+    private long calibrateAllocation() {
+        if (threads == null) {
+            return 0;
+        }
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long before = getAllocatedBytes();
+            overhead = Math.min(overhead, getAllocatedBytes() - before);
+        }
+        return overhead;
+    }
+
+    /**
+     * A workload and the tick it starts at
+     */
+    private static final class Scheduled {
+        private final int startTick;
+        private final Workload workload;
+
+        Scheduled(int startTick, Workload workload) {
+            this.startTick = startTick;
+            this.workload = workload;
+        }
+    }
+}
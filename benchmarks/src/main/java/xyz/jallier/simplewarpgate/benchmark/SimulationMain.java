@@ -0,0 +1,54 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs a workload script and prints the report. The script is a file path, or the name of a built in workload:
+ * creation-storm, hub-rush or mass-explosions. A second argument writes the per tick figures to a CSV file
+ */
+public final class SimulationMain {
+    private SimulationMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: SimulationMain <script file or workload name> [ticks.csv]");
+            System.exit(2);
+            return;
+        }
+        WorkloadScript script;
+        try (Reader reader = open(args[0])) {
+            if (reader == null) {
+                System.err.println("No script file or built in workload called " + args[0]);
+                System.exit(2);
+                return;
+            }
+            script = WorkloadScript.parse(new File(args[0]).getName(), reader);
+        }
+        SimulationReport report = script.run();
+        System.out.print(report.format());
+        if (args.length == 2) {
+            report.writeCsv(new File(args[1]));
+        }
+    }
+
+    private static Reader open(String script) throws IOException {
+        File file = new File(script);
+        InputStream in;
+        if (file.isFile()) {
+            in = new FileInputStream(file);
+        } else {
+            in = SimulationMain.class.getResourceAsStream("/workloads/" + script + ".txt");
+            if (in == null) {
+                return null;
+            }
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,247 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import xyz.jallier.simplewarpgate.Counter;
+import xyz.jallier.simplewarpgate.LatencyHistogram;
+import xyz.jallier.simplewarpgate.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The plugin time and allocation of each tick of a simulation, with the plugin metrics recorded during it
+ */
+public final class SimulationReport {
+    /**
+     * Ticks in a second on a server keeping up
+     */
+    public static final int TICKS_PER_SECOND = 20;
+    /**
+     * The default tick budget of the plugin's watchdog
+     */
+    public static final long WATCHDOG_BUDGET_NANOS = 5_000_000L;
+    /**
+     * The length of a whole tick
+     */
+    public static final long TICK_NANOS = 50_000_000L;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final String name;
+    private final int gateCount;
+    private final int playerCount;
+    private final long[] nanos;
+    private final long[] bytes;
+    private final int[] calls;
+    private final boolean allocationMeasured;
+    private final long[] counters;
+    private final long[][] histograms;
+
+    /**
+     * Construct a new report. The metrics are read now, less the baseline taken when the simulation started
+     *
+     * @param name               name of the workload
+     * @param gateCount          number of gates at the start
+     * @param playerCount        number of players
+     * @param nanos              plugin time in each tick
+     * @param bytes              bytes allocated by the plugin in each tick
+     * @param calls              number of handler and task calls in each tick
+     * @param allocationMeasured false if the JVM could not count allocated bytes
+     * @param baseline           the metrics when the simulation started
+     */
+    SimulationReport(String name, int gateCount, int playerCount, long[] nanos, long[] bytes, int[] calls,
+                     boolean allocationMeasured, Baseline baseline) {
+        this.name = name;
+        this.gateCount = gateCount;
+        this.playerCount = playerCount;
+        this.nanos = nanos;
+        this.bytes = bytes;
+        this.calls = calls;
+        this.allocationMeasured = allocationMeasured;
+        Baseline now = new Baseline();
+        counters = new long[now.counters.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = now.counters[i] - baseline.counters[i];
+        }
+        histograms = new long[now.histograms.length][];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new long[now.histograms[i].length];
+            for (int j = 0; j < histograms[i].length; j++) {
+                histograms[i][j] = now.histograms[i][j] - baseline.histograms[i][j];
+            }
+        }
+    }
+
+    /**
+     * Format the report for reading
+     *
+     * @return the report
+     */
+    public String format() {
+        StringBuilder builder = new StringBuilder();
+        int ticks = nanos.length;
+        builder.append(String.format(Locale.ROOT, "Workload %s: %d gates, %d players, %d ticks (%.1f s)%n",
+                name, gateCount, playerCount, ticks, ticks / (double) TICKS_PER_SECOND));
+
+        long[] sortedNanos = sorted(nanos);
+        builder.append("Plugin time per tick (ms):");
+        appendQuantiles(builder, sortedNanos, 1e6, "%.3f");
+        builder.append(String.format(Locale.ROOT, "  mean %.3f%n", mean(nanos) / 1e6));
+        builder.append(String.format(Locale.ROOT, "Ticks over the %d ms watchdog budget: %d, over a whole tick: %d%n",
+                WATCHDOG_BUDGET_NANOS / 1_000_000, countOver(nanos, WATCHDOG_BUDGET_NANOS),
+                countOver(nanos, TICK_NANOS)));
+
+        if (allocationMeasured) {
+            long[] sortedBytes = sorted(bytes);
+            long total = 0;
+            for (long tickBytes : bytes) {
+                total += tickBytes;
+            }
+            builder.append("Allocated per tick (KB):");
+            appendQuantiles(builder, sortedBytes, 1024, "%.1f");
+            builder.append(String.format(Locale.ROOT, "  mean %.1f%n", mean(bytes) / 1024));
+            double seconds = ticks / (double) TICKS_PER_SECOND;
+            builder.append(String.format(Locale.ROOT, "Allocated in total: %.1f MB, %.2f MB/s at %d ticks per second%n",
+                    total / 1048576.0, seconds == 0 ? 0 : total / 1048576.0 / seconds, TICKS_PER_SECOND));
+        } else {
+            builder.append(String.format("Allocation not measured: this JVM cannot count allocated bytes per thread%n"));
+        }
+
+        builder.append(String.format("%nCounters:%n"));
+        List<Counter> counterList = Metrics.getCounters();
+        for (int i = 0; i < counterList.size(); i++) {
+            builder.append(String.format(Locale.ROOT, "  %-36s %d%n", counterList.get(i).getName(), counters[i]));
+        }
+        builder.append(String.format("%nCalls (bucket upper bounds, us):%n"));
+        builder.append(String.format(Locale.ROOT, "  %-36s %10s %10s %10s %10s%n", "", "count", "p50", "p99", "max"));
+        List<LatencyHistogram> histogramList = Metrics.getHistograms();
+        for (int i = 0; i < histogramList.size(); i++) {
+            long[] buckets = histograms[i];
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            if (count == 0) {
+                continue;
+            }
+            builder.append(String.format(Locale.ROOT, "  %-36s %10d %10s %10s %10s%n", histogramList.get(i).getName(),
+                    count, formatBound(quantile(buckets, count, 0.5)), formatBound(quantile(buckets, count, 0.99)),
+                    formatBound(quantile(buckets, count, 1))));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write one line per tick, for plotting
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void writeCsv(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println("tick,plugin_nanos,allocated_bytes,calls");
+            for (int i = 0; i < nanos.length; i++) {
+                writer.println(i + "," + nanos[i] + "," + bytes[i] + "," + calls[i]);
+            }
+        }
+    }
+
+    private static void appendQuantiles(StringBuilder builder, long[] sorted, double scale, String format) {
+        for (double quantile : QUANTILES) {
+            builder.append(String.format(Locale.ROOT, "  p%s " + format,
+                    formatQuantile(quantile), valueAt(sorted, quantile) / scale));
+        }
+        builder.append(String.format(Locale.ROOT, "  max " + format,
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / scale));
+    }
+
+    private static String formatQuantile(double quantile) {
+        String percent = String.format(Locale.ROOT, "%.1f", quantile * 100);
+        return percent.endsWith(".0") ? percent.substring(0, percent.length() - 2) : percent;
+    }
+
+    /**
+     * Get a value by nearest rank
+     */
+    private static long valueAt(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long quantile(long[] buckets, long count, double quantile) {
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return LatencyHistogram.getBucketBoundNanos(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static String formatBound(long nanos) {
+        if (nanos == Long.MAX_VALUE) {
+            return "overflow";
+        }
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static long[] sorted(long[] values) {
+        long[] copy = values.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static double mean(long[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    private static int countOver(long[] values, long limit) {
+        int count = 0;
+        for (long value : values) {
+            if (value > limit) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The plugin metrics at a point in time, so a report only counts what happened during the simulation
+     */
+    static final class Baseline {
+        private final long[] counters;
+        private final long[][] histograms;
+
+        Baseline() {
+            List<Counter> counterList = Metrics.getCounters();
+            counters = new long[counterList.size()];
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = counterList.get(i).get();
+            }
+            List<LatencyHistogram> histogramList = Metrics.getHistograms();
+            histograms = new long[histogramList.size()][];
+            for (int i = 0; i < histograms.length; i++) {
+                LatencyHistogram histogram = histogramList.get(i);
+                histograms[i] = new long[histogram.getBucketCount()];
+                for (int j = 0; j < histograms[i].length; j++) {
+                    histograms[i][j] = histogram.getBucket(j);
+                }
+            }
+        }
+    }
+}
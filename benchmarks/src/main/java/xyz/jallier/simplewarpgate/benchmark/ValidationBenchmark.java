@@ -0,0 +1,50 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.jallier.simplewarpgate.Gate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checking whether the blocks behind a placed sign form a gate frame
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ValidationBenchmark {
+    @State(Scope.Thread)
+    public static class Frames {
+        Block validFrame;
+        Block noFrame;
+
+        @Setup(Level.Trial)
+        public void setUp(NetworkState state) {
+            validFrame = state.network.getStartBlock(state.slot);
+            noFrame = state.world.getBlockAt(-1000, GateNetwork.START_Y, -1000);
+        }
+    }
+
+    @Benchmark
+    public boolean validFrame(Frames frames) {
+        return Gate.checkBlocksAreValid(frames.validFrame, BlockFace.NORTH);
+    }
+
+    @Benchmark
+    public boolean noFrame(Frames frames) {
+        return Gate.checkBlocksAreValid(frames.noFrame, BlockFace.NORTH);
+    }
+}
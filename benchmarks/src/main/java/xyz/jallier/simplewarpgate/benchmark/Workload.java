@@ -0,0 +1,32 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+/**
+ * Traffic played into a {@link Simulation}, one tick at a time
+ */
+public interface Workload {
+    /**
+     * Play one tick of the workload
+     *
+     * @param simulation the simulation to send events to
+     * @param tick       ticks since the workload started, starting at 0
+     * @return false once the workload has finished
+     */
+    boolean tick(Simulation simulation, int tick);
+
+    /**
+     * Spread a number of actions evenly over a number of ticks
+     *
+     * @param total total number of actions
+     * @param ticks number of ticks to spread them over
+     * @param tick  the current tick
+     * @return number of actions to take this tick
+     */
+    static int share(int total, int ticks, int tick) {
+        if (tick >= ticks) {
+            return 0;
+        }
+        long before = (long) total * tick / ticks;
+        long after = (long) total * (tick + 1) / ticks;
+        return (int) (after - before);
+    }
+}
@@ -0,0 +1,150 @@
+package xyz.jallier.simplewarpgate.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simulation described in a text file, one command per line. Blank lines and text after # are ignored.
+ *
+ * <pre>
+ * gates &lt;count&gt;                              gates built before the simulation starts
+ * players &lt;count&gt;                            players online
+ * seed &lt;number&gt;                              seed for choosing gates and players
+ * ticks &lt;count&gt;                              how long to run for
+ * at &lt;tick&gt; storm &lt;gates&gt; &lt;ticks&gt;              players create new gates
+ * at &lt;tick&gt; rush &lt;players&gt; &lt;slot&gt; &lt;ticks&gt;      players crowd into the gate in a slot
+ * at &lt;tick&gt; explode &lt;count&gt; &lt;radius&gt; &lt;ticks&gt;  explosions at random gates
+ * at &lt;tick&gt; break &lt;blocks&gt; &lt;ticks&gt;             players break frame blocks of random gates
+ * </pre>
+ */
+public final class WorkloadScript {
+    private final String name;
+    private int gateCount = 1000;
+    private int playerCount = 100;
+    private long seed = 1;
+    private int ticks = 20 * 60;
+    private int createdGates = 0;
+    private final List<Integer> startTicks = new ArrayList<>();
+    private final List<Workload> workloads = new ArrayList<>();
+
+    private WorkloadScript(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Read a script
+     *
+     * @param name   name of the workload
+     * @param reader the script text
+     * @return the script
+     * @throws IOException              if the script could not be read
+     * @throws IllegalArgumentException if a line is not a valid command
+     */
+    public static WorkloadScript parse(String name, Reader reader) throws IOException {
+        WorkloadScript script = new WorkloadScript(name);
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            try {
+                script.parseCommand(line.split("\\s+"));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(name + " line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return script;
+    }
+
+    /**
+     * Build the simulation and run the script
+     *
+     * @return the report
+     */
+    public SimulationReport run() {
+        Simulation simulation = new Simulation(name, gateCount, gateCount + createdGates, playerCount, seed);
+        for (int i = 0; i < workloads.size(); i++) {
+            simulation.schedule(startTicks.get(i), workloads.get(i));
+        }
+        return simulation.run(ticks);
+    }
+
+    private void parseCommand(String[] words) {
+        switch (words[0]) {
+            case "gates":
+                expectArguments(words, 1);
+                gateCount = parseCount(words[1]);
+                break;
+            case "players":
+                expectArguments(words, 1);
+                playerCount = Math.max(1, parseCount(words[1]));
+                break;
+            case "seed":
+                expectArguments(words, 1);
+                seed = Long.parseLong(words[1]);
+                break;
+            case "ticks":
+                expectArguments(words, 1);
+                ticks = parseCount(words[1]);
+                break;
+            case "at":
+                if (words.length < 3) {
+                    throw new IllegalArgumentException("expected at <tick> <workload> ...");
+                }
+                startTicks.add(parseCount(words[1]));
+                workloads.add(parseWorkload(words));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown command " + words[0]);
+        }
+    }
+
+    private Workload parseWorkload(String[] words) {
+        String[] arguments = new String[words.length - 2];
+        System.arraycopy(words, 2, arguments, 0, arguments.length);
+        switch (arguments[0]) {
+            case "storm":
+                expectArguments(arguments, 2);
+                int gates = parseCount(arguments[1]);
+                createdGates += gates;
+                return new CreationStorm(gates, parseCount(arguments[2]));
+            case "rush":
+                expectArguments(arguments, 3);
+                return new HubRush(parseCount(arguments[1]), parseCount(arguments[2]), parseCount(arguments[3]));
+            case "explode":
+                expectArguments(arguments, 3);
+                return new MassExplosions(parseCount(arguments[1]), parseCount(arguments[2]),
+                        parseCount(arguments[3]));
+            case "break":
+                expectArguments(arguments, 2);
+                return new Demolition(parseCount(arguments[1]), parseCount(arguments[2]));
+            default:
+                throw new IllegalArgumentException("unknown workload " + arguments[0]);
+        }
+    }
+
+    private static void expectArguments(String[] words, int count) {
+        if (words.length != count + 1) {
+            throw new IllegalArgumentException(words[0] + " takes " + count + " argument(s)");
+        }
+    }
+
+    private static int parseCount(String word) {
+        int value = Integer.parseInt(word);
+        if (value < 0) {
+            throw new IllegalArgumentException("expected a positive number, got " + word);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,64 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.block.Block;
+
+/**
+ * Packs block coordinates into a single long so they can be used as primitive map keys.
+ * Uses 26 bits for x and z and 12 bits for y, which covers the whole world border and build height
+ */
+public final class BlockKey {
+    private BlockKey() {
+    }
+
+    /**
+     * Pack a block position
+     *
+     * @param x block x coordinate
+     * @param y block y coordinate
+     * @param z block z coordinate
+     * @return the packed key
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Pack the position of a block
+     *
+     * @param block the block
+     * @return the packed key
+     */
+    public static long pack(Block block) {
+        return pack(block.getX(), block.getY(), block.getZ());
+    }
+
+    /**
+     * Get the x coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return block x coordinate
+     */
+    public static int getX(long key) {
+        return (int) (key >> 38);
+    }
+
+    /**
+     * Get the y coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return block y coordinate
+     */
+    public static int getY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    /**
+     * Get the z coordinate from a packed key
+     *
+     * @param key the packed key
+     * @return block z coordinate
+     */
+    public static int getZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+}
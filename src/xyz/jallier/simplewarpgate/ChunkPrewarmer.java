@@ -0,0 +1,254 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the chunks around the destinations of open portals loaded with plugin chunk tickets, so teleporting does not
+ * have to load the destination chunk while the player waits
+ */
+public class ChunkPrewarmer implements Runnable {
+    /**
+     * Radius in chunks around the destination to keep loaded. 1 is a 3x3 area
+     */
+    private static final int RADIUS = 1;
+    /**
+     * How long a destination stays loaded after its portal was last opened or used
+     */
+    public static final long IDLE_TIMEOUT_MILLIS = 30_000L;
+    /**
+     * Maximum number of chunk tickets held at once. The least recently used destinations are released first
+     */
+    public static final int MAX_TICKETS = 256;
+
+    private static final ChunkPrewarmer chunkPrewarmer = new ChunkPrewarmer();
+
+    /**
+     * The destination kept loaded for each source gate. Ordered from least to most recently used
+     */
+    private final LinkedHashMap<Gate, Warm> warmed;
+    /**
+     * Number of warmed destinations using each chunk, per world id. Keyed by packed chunk coordinate
+     */
+    private final List<LongObjectMap<int[]>> chunkUsers;
+    private int ticketCount;
+    private Plugin plugin;
+
+    /**
+     * A destination kept loaded for a source gate
+     */
+    private static class Warm {
+        private final Gate destination;
+        private long lastUsed;
+
+        Warm(Gate destination, long lastUsed) {
+            this.destination = destination;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private ChunkPrewarmer() {
+        warmed = new LinkedHashMap<>(16, 0.75f, true);
+        chunkUsers = new ArrayList<>();
+        ticketCount = 0;
+        plugin = null;
+    }
+
+    /**
+     * Get the prewarmer
+     *
+     * @return the ChunkPrewarmer instance
+     */
+    public static ChunkPrewarmer getInstance() {
+        return chunkPrewarmer;
+    }
+
+    /**
+     * Start adding tickets. Until this is called the prewarmer does nothing
+     *
+     * @param plugin the plugin to hold the tickets
+     */
+    public void start(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Release every ticket and stop adding new ones
+     */
+    public synchronized void stop() {
+        if (plugin == null) {
+            return;
+        }
+        for (Warm warm : new ArrayList<>(warmed.values())) {
+            removeTickets(warm.destination);
+        }
+        warmed.clear();
+        plugin = null;
+    }
+
+    /**
+     * Keep the chunks around a destination loaded while a source gate has its portal open to it
+     *
+     * @param source      the gate travelling from
+     * @param destination the gate travelling to
+     */
+    public synchronized void prewarm(Gate source, Gate destination) {
+        if (plugin == null || destination == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Warm warm = warmed.get(source);
+        if (warm != null) {
+            if (warm.destination == destination) {
+                warm.lastUsed = now;
+                return;
+            }
+            release(source);
+        }
+        warmed.put(source, new Warm(destination, now));
+        addTickets(destination);
+        evictOverCap();
+    }
+
+    /**
+     * Stop keeping the destination of a source gate loaded
+     *
+     * @param source the gate travelling from
+     */
+    public synchronized void release(Gate source) {
+        if (plugin == null) {
+            return;
+        }
+        Warm warm = warmed.remove(source);
+        if (warm != null) {
+            removeTickets(warm.destination);
+        }
+    }
+
+    /**
+     * Release every destination in a world that is unloading, and every destination kept loaded for a gate in it
+     *
+     * @param world the world
+     */
+    public synchronized void releaseWorld(World world) {
+        if (plugin == null) {
+            return;
+        }
+        int worldId = WorldIndex.getId(world);
+        Iterator<Map.Entry<Gate, Warm>> iterator = warmed.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Gate, Warm> entry = iterator.next();
+            Warm warm = entry.getValue();
+            if (entry.getKey().getKey().getWorldIndex() == worldId
+                    || warm.destination.getKey().getWorldIndex() == worldId) {
+                iterator.remove();
+                removeTickets(warm.destination);
+            }
+        }
+    }
+
+    /**
+     * Release destinations that have not been used for a while, or whose gates no longer exist
+     */
+    @Override
+    public synchronized void run() {
+        if (plugin == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        long expiry = System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS;
+        Iterator<Map.Entry<Gate, Warm>> iterator = warmed.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Gate, Warm> entry = iterator.next();
+            Warm warm = entry.getValue();
+            if (warm.lastUsed < expiry || entry.getKey().isRemoved() || warm.destination.isRemoved()) {
+                iterator.remove();
+                removeTickets(warm.destination);
+            }
+        }
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Release the least recently used destinations until the number of tickets is under the cap
+     */
+    private void evictOverCap() {
+        Iterator<Map.Entry<Gate, Warm>> iterator = warmed.entrySet().iterator();
+        while (ticketCount > MAX_TICKETS && iterator.hasNext()) {
+            Warm warm = iterator.next().getValue();
+            iterator.remove();
+            removeTickets(warm.destination);
+        }
+    }
+
+    /**
+     * Get the number of chunk tickets held
+     *
+     * @return number of tickets
+     */
+    public synchronized int getTicketCount() {
+        return ticketCount;
+    }
+
+    private void addTickets(Gate destination) {
+        GateKey gateKey = destination.getKey();
+        World world = gateKey.getWorld();
+        if (world == null) {
+            return;
+        }
+        LongObjectMap<int[]> users = getChunkUsers(gateKey.getWorldIndex());
+        int centreX = gateKey.getX() >> 4;
+        int centreZ = gateKey.getZ() >> 4;
+        for (int chunkX = centreX - RADIUS; chunkX <= centreX + RADIUS; chunkX++) {
+            for (int chunkZ = centreZ - RADIUS; chunkZ <= centreZ + RADIUS; chunkZ++) {
+                long key = GateSpatialIndex.chunkKey(chunkX, chunkZ);
+                int[] count = users.get(key);
+                if (count == null) {
+                    users.put(key, new int[]{1});
+                    world.addPluginChunkTicket(chunkX, chunkZ, plugin);
+                    ticketCount++;
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+    }
+
+    private void removeTickets(Gate destination) {
+        GateKey gateKey = destination.getKey();
+        // Null once the world has unloaded, taking its tickets with it
+        World world = gateKey.getWorld();
+        LongObjectMap<int[]> users = getChunkUsers(gateKey.getWorldIndex());
+        int centreX = gateKey.getX() >> 4;
+        int centreZ = gateKey.getZ() >> 4;
+        for (int chunkX = centreX - RADIUS; chunkX <= centreX + RADIUS; chunkX++) {
+            for (int chunkZ = centreZ - RADIUS; chunkZ <= centreZ + RADIUS; chunkZ++) {
+                long key = GateSpatialIndex.chunkKey(chunkX, chunkZ);
+                int[] count = users.get(key);
+                if (count == null) {
+                    continue;
+                }
+                if (--count[0] == 0) {
+                    users.remove(key);
+                    if (world != null) {
+                        world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+                    }
+                    ticketCount--;
+                }
+            }
+        }
+    }
+
+    private LongObjectMap<int[]> getChunkUsers(int worldId) {
+        while (chunkUsers.size() <= worldId) {
+            chunkUsers.add(new LongObjectMap<>());
+        }
+        return chunkUsers.get(worldId);
+    }
+}
@@ -0,0 +1,69 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds gates that are waiting for a chunk to load, so work on them can be skipped until the chunk is available
+ */
+public class ChunkWaitList {
+    /**
+     * Waiting gates per world id, keyed by packed chunk coordinate
+     */
+    private final List<LongObjectMap<Set<Gate>>> waiting;
+
+    public ChunkWaitList() {
+        waiting = new ArrayList<>();
+    }
+
+    /**
+     * Hold a gate until a chunk loads. Adding the same gate to the same chunk twice has no effect
+     *
+     * @param worldId  id of the world the chunk is in
+     * @param chunkKey packed chunk coordinate
+     * @param gate     the gate
+     */
+    public void add(int worldId, long chunkKey, Gate gate) {
+        while (waiting.size() <= worldId) {
+            waiting.add(new LongObjectMap<>());
+        }
+        LongObjectMap<Set<Gate>> chunks = waiting.get(worldId);
+        Set<Gate> gates = chunks.get(chunkKey);
+        if (gates == null) {
+            gates = new LinkedHashSet<>();
+            chunks.put(chunkKey, gates);
+        }
+        gates.add(gate);
+    }
+
+    /**
+     * Drop every gate waiting for a chunk in a world, once the world has unloaded
+     *
+     * @param world the world
+     */
+    public void removeWorld(World world) {
+        int worldId = WorldIndex.getId(world);
+        if (worldId < waiting.size()) {
+            waiting.get(worldId).clear();
+        }
+    }
+
+    /**
+     * Remove and return the gates waiting for a chunk
+     *
+     * @param chunk the chunk that loaded
+     * @return the waiting gates, or null if there are none
+     */
+    public Set<Gate> release(Chunk chunk) {
+        int worldId = WorldIndex.getId(chunk.getWorld());
+        if (worldId >= waiting.size()) {
+            return null;
+        }
+        return waiting.get(worldId).remove(GateSpatialIndex.chunkKey(chunk.getX(), chunk.getZ()));
+    }
+}
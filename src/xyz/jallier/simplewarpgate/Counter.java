@@ -0,0 +1,58 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up, such as the number of teleports. Incrementing never allocates
+ */
+public class Counter {
+    private final String name;
+    private final String help;
+    private final AtomicLong count;
+
+    /**
+     * Construct a new counter. Use {@link Metrics} to create registered counters
+     *
+     * @param name name of the counter, in Prometheus form
+     * @param help description of what is counted
+     */
+    Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+        count = new AtomicLong();
+    }
+
+    /**
+     * Add one to the count
+     */
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * Get the count
+     *
+     * @return the count
+     */
+    public long get() {
+        return count.get();
+    }
+
+    /**
+     * Get name
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get help text
+     *
+     * @return help text
+     */
+    public String getHelp() {
+        return help;
+    }
+}
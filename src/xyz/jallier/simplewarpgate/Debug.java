@@ -0,0 +1,44 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+
+import java.util.logging.Level;
+
+/**
+ * Console output for debugging gates. Off unless enabled in the config, so a busy server is not slowed down by logging
+ */
+public final class Debug {
+    private static boolean enabled = false;
+
+    private Debug() {
+    }
+
+    /**
+     * Turn debug output on or off
+     *
+     * @param enabled if debug output should be written
+     */
+    public static void setEnabled(boolean enabled) {
+        Debug.enabled = enabled;
+    }
+
+    /**
+     * Check if debug output is on. Check this before building a message that needs concatenation
+     *
+     * @return if debug output is on
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Write a debug message, if debug output is on
+     *
+     * @param message the message
+     */
+    public static void log(String message) {
+        if (enabled) {
+            Bukkit.getLogger().log(Level.INFO, "[SimpleWarpGate] " + message);
+        }
+    }
+}
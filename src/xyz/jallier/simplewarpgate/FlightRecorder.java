@@ -0,0 +1,158 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.UUID;
+
+/**
+ * Keeps the most recent gate events in a fixed size ring buffer, so there is a record of what the plugin was doing
+ * when a lag spike happens. Also adds up the time the plugin spends each tick for the {@link TickWatchdog}.
+ * Recording only writes to preallocated arrays. Region threads of a region threaded server record into the same buffer,
+ * so recording takes a lock
+ */
+public class FlightRecorder {
+    /**
+     * Number of events kept. Older events are overwritten
+     */
+    public static final int CAPACITY = 4096;
+
+    private static final FlightRecorder flightRecorder = new FlightRecorder();
+
+    private final GateEventType[] types;
+    private final String[] gateNames;
+    private final UUID[] players;
+    private final long[] nanosTaken;
+    private final long[] timestamps;
+    /**
+     * Total number of events recorded. The next event is written at this position modulo the capacity
+     */
+    private long recorded;
+    /**
+     * Time spent in plugin work since the watchdog last checked
+     */
+    private long tickWorkNanos;
+
+    /**
+     * Copy of the buffer, oldest event first
+     */
+    public static class Snapshot {
+        private final GateEventType[] types;
+        private final String[] gateNames;
+        private final UUID[] players;
+        private final long[] nanosTaken;
+        private final long[] timestamps;
+
+        private Snapshot(int size) {
+            types = new GateEventType[size];
+            gateNames = new String[size];
+            players = new UUID[size];
+            nanosTaken = new long[size];
+            timestamps = new long[size];
+        }
+
+        /**
+         * Get the number of events
+         *
+         * @return number of events
+         */
+        public int size() {
+            return types.length;
+        }
+
+        /**
+         * Format an event as a line of text
+         *
+         * @param i index of the event, 0 being the oldest
+         * @return the event text
+         */
+        public String format(int i) {
+            return timestamps[i] + "\t" + types[i] + "\t" + (gateNames[i] == null ? "-" : gateNames[i]) + "\t"
+                    + (players[i] == null ? "-" : players[i].toString()) + "\t" + nanosTaken[i];
+        }
+    }
+
+    private FlightRecorder() {
+        types = new GateEventType[CAPACITY];
+        gateNames = new String[CAPACITY];
+        players = new UUID[CAPACITY];
+        nanosTaken = new long[CAPACITY];
+        timestamps = new long[CAPACITY];
+        recorded = 0;
+        tickWorkNanos = 0;
+    }
+
+    /**
+     * Get the flight recorder
+     *
+     * @return the FlightRecorder instance
+     */
+    public static FlightRecorder getInstance() {
+        return flightRecorder;
+    }
+
+    /**
+     * Record an event
+     *
+     * @param type   the type of event
+     * @param gate   the gate involved, or null
+     * @param player the player involved, or null
+     * @param nanos  how long the event took, or 0 if it was not timed
+     */
+    public synchronized void record(GateEventType type, Gate gate, UUID player, long nanos) {
+        int index = (int) (recorded % CAPACITY);
+        types[index] = type;
+        gateNames[index] = gate == null ? null : gate.getName();
+        players[index] = player;
+        nanosTaken[index] = nanos;
+        timestamps[index] = System.currentTimeMillis();
+        recorded++;
+    }
+
+    /**
+     * Add time spent in plugin work this tick. Only top level work such as event handlers and scheduled tasks should
+     * be added, so nested work is not counted twice
+     *
+     * @param nanos time spent
+     */
+    public synchronized void addWork(long nanos) {
+        tickWorkNanos += nanos;
+    }
+
+    /**
+     * Add the time since a start time to the plugin work this tick
+     *
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+    public synchronized void addWorkSince(long startNanos) {
+        tickWorkNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Get the plugin work since the last call, and start counting again
+     *
+     * @return time spent in nanoseconds
+     */
+    public synchronized long takeWork() {
+        long work = tickWorkNanos;
+        tickWorkNanos = 0;
+        return work;
+    }
+
+    /**
+     * Copy the buffer
+     *
+     * @return the events currently in the buffer, oldest first
+     */
+    public synchronized Snapshot snapshot() {
+        int size = (int) Math.min(recorded, CAPACITY);
+        Snapshot snapshot = new Snapshot(size);
+        long first = recorded - size;
+        for (int i = 0; i < size; i++) {
+            int index = (int) ((first + i) % CAPACITY);
+            snapshot.types[i] = types[index];
+            snapshot.gateNames[i] = gateNames[index];
+            snapshot.players[i] = players[index];
+            snapshot.nanosTaken[i] = nanosTaken[index];
+            snapshot.timestamps[i] = timestamps[index];
+        }
+        return snapshot;
+    }
+}
@@ -1,34 +1,66 @@
 package xyz.jallier.simplewarpgate;
 
-import org.bukkit.Axis;
-import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
 import org.bukkit.block.Sign;
+import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Directional;
-import org.bukkit.block.data.Orientable;
 
+import java.util.AbstractList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.logging.Level;
 
 /**
- * Represents a Gate object which is used to check if the shape is correct and manage the state of each individual gate
+ * Represents a Gate object which is used to check if the shape is correct and manage the state of each individual gate.
+ * The state of a gate is only changed by the thread owning its blocks; see {@link GateScheduler}
  */
 public class Gate {
     /**
-     * This is the block the sign is placed against. Should be middle right
+     * Returned by {@link #findUnloadedChunk()} when every chunk the gate touches is loaded
      */
-    private final Block startBlock;
+    public static final long NO_CHUNK = Long.MIN_VALUE;
     /**
-     * Direction of the gate
+     * How far a player may fall after arriving before the landing spot counts as a void drop
      */
-    private final BlockFace direction;
+    private static final int ARRIVAL_DROP_LIMIT = 4;
+    /**
+     * Number of destinations shown on the sign at once
+     */
+    private static final int SIGN_LIST_LINES = 3;
+
+    /**
+     * World, start block and direction of the gate. The start block is the block the sign is placed against, and should
+     * be middle right. Blocks are looked up from the world when needed, so the gate does not keep the world loaded
+     */
+    private final GateKey key;
     /**
      * Name of the gate
      */
     private final String name;
+    /**
+     * Name of the gate normalised for sorting and comparing
+     */
+    private final String nameKey;
+    /**
+     * Network the gate belongs to, or an empty string. Gates only list destinations in the same network
+     */
+    private final String network;
+    /**
+     * Network name normalised for comparing
+     */
+    private final String networkKey;
+    /**
+     * Shape of the frame
+     */
+    private final GateShape shape;
+    /**
+     * Block offsets of the shape for the gate direction
+     */
+    private final GateShape.Layout layout;
 
     /**
      * The position of the selected destination gate cursor
@@ -46,37 +78,173 @@ public class Gate {
      * If the portal should show the portal material
      */
     private boolean portalActive;
+    /**
+     * Packed position of the sign block
+     */
+    private final long signKey;
+    /**
+     * Packed position of the button block
+     */
+    private final long buttonKey;
+    /**
+     * Packed positions of the frame blocks
+     */
+    private final long[] frameKeys;
+    /**
+     * Frame blocks, then the sign and the button, that have been destroyed. Null until something is destroyed
+     */
+    private BitSet destroyedBlocks;
+    /**
+     * If the gate has been torn down and removed from the manager
+     */
+    private boolean removed;
+    /**
+     * Cached view of the other gates, rebuilt when the gate manager snapshot version changes
+     */
+    private List<Gate> destinations;
+    /**
+     * Snapshot version the destinations were built from
+     */
+    private long destinationsVersion;
+    /**
+     * If the button and middle blocks have been placed in the world. Gates loaded from file are only placed once their
+     * chunks are loaded
+     */
+    private boolean materialised;
+    /**
+     * If the portal should be opened once the gate is placed in the world
+     */
+    private boolean pendingPortalActive;
+    /**
+     * Where players arrive when travelling to this gate, or null if there is no safe spot
+     */
+    private Location arrivalLocation;
+    /**
+     * If the arrival location has been worked out since the blocks around it last changed
+     */
+    private boolean arrivalCalculated;
+    /**
+     * The tick the portal closes on if it is not used again before then
+     */
+    private long idleDeadline;
+    /**
+     * If the gate is in the idle timer's wheel
+     */
+    private boolean idleScheduled;
 
     /**
-     * Construct a new gate
+     * Construct a new gate with the default shape
      *
      * @param startBlock The block that the sign was placed against
      * @param direction  The direction of the gate (and sign)
      * @param name       The name of the gate
      */
     public Gate(Block startBlock, BlockFace direction, String name) {
-        this.startBlock = startBlock;
-        this.direction = direction;
+        this(startBlock, direction, name, GateShapes.getDefault(), "");
+    }
+
+    /**
+     * Construct a new gate
+     *
+     * @param startBlock The block that the sign was placed against
+     * @param direction  The direction of the gate (and sign)
+     * @param name       The name of the gate
+     * @param shape      The shape of the frame
+     * @param network    The network the gate belongs to, or an empty string
+     * @throws IllegalArgumentException if the direction is not horizontal
+     */
+    public Gate(Block startBlock, BlockFace direction, String name, GateShape shape, String network) {
+        this(GateKey.of(startBlock, direction), name, shape, network);
+    }
+
+    /**
+     * Construct a new gate at a key
+     *
+     * @param key     The world, start block and direction of the gate
+     * @param name    The name of the gate
+     * @param shape   The shape of the frame
+     * @param network The network the gate belongs to, or an empty string
+     * @throws IllegalArgumentException if the direction is not horizontal
+     */
+    public Gate(GateKey key, String name, GateShape shape, String network) {
+        this.key = key;
+        BlockFace direction = key.getDirection();
         this.name = name;
+        nameKey = GateNameRegistry.normalise(name);
+        this.network = network.trim();
+        networkKey = GateNameRegistry.normalise(network);
+        this.shape = shape;
+        layout = shape.getLayout(direction);
+        if (layout == null) {
+            throw new IllegalArgumentException("Direction " + direction + " is not horizontal");
+        }
         cursorIndex = 0;
         gateListWindowIndex = 0;
         selectedDestination = null;
         portalActive = false;
+        signKey = packOffset(layout.getSignOffset(), 0);
+        buttonKey = packOffset(layout.getButtonOffset(), 0);
+        frameKeys = packOffsets(layout.getFrameOffsets());
+        destroyedBlocks = null;
+        removed = false;
+        destinations = null;
+        destinationsVersion = -1;
+        materialised = false;
+        pendingPortalActive = false;
+        arrivalLocation = null;
+        arrivalCalculated = false;
+    }
+
+    /**
+     * Pack the position of a block given by its offset from the start block
+     *
+     * @param offsets x, y, z triples
+     * @param index   index of the x of the triple
+     * @return the packed position
+     */
+    private long packOffset(int[] offsets, int index) {
+        return BlockKey.pack(key.getX() + offsets[index], key.getY() + offsets[index + 1],
+                key.getZ() + offsets[index + 2]);
+    }
+
+    /**
+     * Pack the positions of blocks given by their offsets from the start block
+     *
+     * @param offsets x, y, z triples
+     * @return array of packed block positions
+     */
+    private long[] packOffsets(int[] offsets) {
+        long[] keys = new long[offsets.length / 3];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = packOffset(offsets, i * 3);
+        }
+        return keys;
     }
 
     /**
-     * Create a string representation of the gate. Used to store its state to file
+     * Create a string representation of the gate, for logging. The state stored to file is a {@link GateRecord}
      *
-     * @return string representing the gate state
+     * @return the name and key of the gate
      */
     @Override
     public String toString() {
-        String world = startBlock.getWorld().getName();
-        int x = startBlock.getX();
-        int y = startBlock.getY();
-        int z = startBlock.getZ();
-        String direction = this.direction.name();
-        return String.format("%s::%s::%s,%s,%s::%s", name, world, x, y, z, direction);
+        return name + "::" + key;
+    }
+
+    /**
+     * Get the list of gates this gate can travel to. The list is a view over the gates of its network that skips this
+     * gate, and is only rebuilt when the snapshot version changes
+     *
+     * @param gates   the gates in the network of this gate, sorted by name
+     * @param version the snapshot version
+     * @return the other gates
+     */
+    List<Gate> getDestinations(List<Gate> gates, long version) {
+        if (destinations == null || destinationsVersion != version) {
+            destinations = new DestinationList(gates, findDestination(gates, this));
+            destinationsVersion = version;
+        }
+        return destinations;
     }
 
     /**
@@ -89,12 +257,88 @@ public class Gate {
     }
 
     /**
-     * Get start block
+     * Get the name normalised for sorting and comparing
+     *
+     * @return normalised name
+     */
+    public String getNameKey() {
+        return nameKey;
+    }
+
+    /**
+     * Get the network the gate belongs to
+     *
+     * @return network name as typed, or an empty string
+     */
+    public String getNetwork() {
+        return network;
+    }
+
+    /**
+     * Get the network name normalised for comparing
+     *
+     * @return normalised network name
+     */
+    public String getNetworkKey() {
+        return networkKey;
+    }
+
+    /**
+     * Get the position of the selected destination cursor
+     *
+     * @return cursor position
+     */
+    public int getCursorIndex() {
+        return cursorIndex;
+    }
+
+    /**
+     * Get the start of the displayed destinations
+     *
+     * @return window position
+     */
+    public int getGateListWindowIndex() {
+        return gateListWindowIndex;
+    }
+
+    /**
+     * Restore the destination selection and portal state from storage. If the gate is not in the world yet the portal
+     * is opened once it is placed
+     *
+     * @param destination         the selected destination, or null
+     * @param cursorIndex         position of the sign cursor
+     * @param gateListWindowIndex start of the displayed destinations
+     * @param portalActive        if the portal should be open
+     */
+    public void restoreState(Gate destination, int cursorIndex, int gateListWindowIndex, boolean portalActive) {
+        this.selectedDestination = destination;
+        this.cursorIndex = cursorIndex;
+        this.gateListWindowIndex = gateListWindowIndex;
+        if (portalActive && destination != null) {
+            if (materialised) {
+                activatePortal();
+            } else {
+                pendingPortalActive = true;
+            }
+        }
+    }
+
+    /**
+     * Get the key of the gate: its world, start block position and direction
+     *
+     * @return the gate key
+     */
+    public GateKey getKey() {
+        return key;
+    }
+
+    /**
+     * Get start block. Looked up from the world each time
      *
-     * @return start block
+     * @return start block, or null if the world is not loaded
      */
     public Block getStartBlock() {
-        return startBlock;
+        return key.getBlock();
     }
 
     /**
@@ -103,32 +347,208 @@ public class Gate {
      * @return direction
      */
     public BlockFace getDirection() {
-        return direction;
+        return key.getDirection();
     }
 
     /**
-     * Instantiate a new gate, and set its various properties
+     * Look up the world the gate is in
+     *
+     * @return the world, or null if it is not loaded
+     */
+    private World getWorld() {
+        return key.getWorld();
+    }
+
+    /**
+     * Get the shape of the frame
+     *
+     * @return shape
+     */
+    public GateShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Check if a name can be given to a gate. Names cannot be blank, and cannot contain the separators used in the data
+     * file and journal
+     *
+     * @param name the name to check
+     * @return if the name is valid
+     */
+    public static boolean isValidName(String name) {
+        return name != null && !name.trim().isEmpty() && !name.contains("::") && !name.contains("|");
+    }
+
+    /**
+     * Instantiate a new gate with the default shape, and set its various properties
      *
      * @param startBlock The block the sign was placed against
      * @return the newly created Gate
      */
     public static Gate createGate(Block startBlock, BlockFace direction, String name) {
-        // TODO validate the gate
-        // TODO validate the gate name
-        Gate gate = new Gate(startBlock, direction, name);
+        return createGate(startBlock, direction, name, GateShapes.getDefault(), "");
+    }
+
+    /**
+     * Instantiate a new gate, and set its various properties
+     *
+     * @param startBlock The block the sign was placed against
+     * @param shape      The shape the frame was matched as
+     * @param network    The network typed on the sign, or an empty string
+     * @return the newly created Gate, or null if the name is not valid or already taken
+     */
+    public static Gate createGate(Block startBlock, BlockFace direction, String name, GateShape shape,
+                                  String network) {
+        if (!isValidName(name)) {
+            return null;
+        }
+        Gate gate = new Gate(startBlock, direction, name, shape, network);
 
         // Gate now created. Get an instance of the manager and add the new gate to it
         GateManager manager = GateManager.getInstance();
         if (!manager.addNewGate(gate)) {
             return null;
         }
-        gate.clearMiddleBlocks();
-        gate.addButton(gate.getSignBlock(), direction);
-        gate.setInitialSignState(gate.getSignBlock());
+        gate.materialise();
+        Metrics.GATES_CREATED.increment();
+        FlightRecorder.getInstance().record(GateEventType.GATE_CREATED, gate, null, 0);
+        GateCreatedEvent.call(gate, GateCreatedEvent.Reason.BUILT);
 
         return gate;
     }
 
+    /**
+     * Register a gate loaded from file without touching the world. The gate is placed in the world later, once the
+     * chunks it is in are loaded
+     *
+     * @param key     The world, start block and direction of the gate
+     * @param name    The name of the gate
+     * @param shape   The shape of the frame
+     * @param network The network the gate belongs to, or an empty string
+     * @return the registered Gate, or null if the name is already taken
+     */
+    public static Gate loadGate(GateKey key, String name, GateShape shape, String network) {
+        Gate gate = new Gate(key, name, shape, network);
+        if (!GateManager.getInstance().addLoadedGate(gate)) {
+            return null;
+        }
+        return gate;
+    }
+
+    /**
+     * Place the gate in the world: clear the middle, add the button, restore the portal and draw the sign
+     */
+    public void materialise() {
+        if (materialised) {
+            return;
+        }
+        materialised = true;
+        if (pendingPortalActive) {
+            pendingPortalActive = false;
+            activatePortal();
+        } else {
+            clearMiddleBlocks();
+        }
+        addButton();
+        SignRenderScheduler.getInstance().markDirty(this);
+        getArrivalLocation(); // Work it out now, while the chunk is loaded
+    }
+
+    /**
+     * Check if the gate has been placed in the world
+     *
+     * @return if the gate is materialised
+     */
+    public boolean isMaterialised() {
+        return materialised;
+    }
+
+    /**
+     * Find a chunk the gate touches that is not loaded. Checks the corners of the gate: the start block, the far side
+     * of the frame, the sign and the button
+     *
+     * @return packed chunk coordinate, or {@link #NO_CHUNK} if every chunk is loaded
+     */
+    public long findUnloadedChunk() {
+        World world = getWorld();
+        int[] farSide = layout.getFarSideOffset();
+        int startX = key.getX();
+        int startZ = key.getZ();
+        long chunk = checkChunkLoaded(world, startX, startZ);
+        if (chunk == NO_CHUNK) {
+            chunk = checkChunkLoaded(world, startX + farSide[0], startZ + farSide[2]);
+        }
+        if (chunk == NO_CHUNK) {
+            chunk = checkChunkLoaded(world, BlockKey.getX(signKey), BlockKey.getZ(signKey));
+        }
+        if (chunk == NO_CHUNK) {
+            chunk = checkChunkLoaded(world, BlockKey.getX(buttonKey), BlockKey.getZ(buttonKey));
+        }
+        return chunk;
+    }
+
+    private static long checkChunkLoaded(World world, int x, int z) {
+        int chunkX = x >> 4;
+        int chunkZ = z >> 4;
+        return world.isChunkLoaded(chunkX, chunkZ) ? NO_CHUNK : GateSpatialIndex.chunkKey(chunkX, chunkZ);
+    }
+
+    /**
+     * Redraw the sign after the list of gates has changed. If the selected destination has moved in the list the
+     * cursor follows it, and if it has gone the selection is reset, so the sign never shows a different gate to the
+     * one that will be travelled to
+     */
+    public void refreshSign() {
+        List<Gate> gates = GateManager.getInstance().getActiveGates(true, this);
+        if (selectedDestination != null) {
+            int gateListIndex = gateListWindowIndex + Math.max(cursorIndex, 1) - 1;
+            if (gateListIndex >= gates.size() || gates.get(gateListIndex) != selectedDestination) {
+                int index = selectedDestination.isRemoved() ? -1 : findDestination(gates, selectedDestination);
+                if (index < 0) {
+                    resetSelection();
+                } else {
+                    // Not journaled: the destination is unchanged, and the cursor is found again like this on load
+                    moveCursorTo(index, gates.size(), false);
+                }
+            }
+        } else if (gateListWindowIndex >= gates.size()) {
+            resetSelection();
+        }
+        setInitialSignState(getSignBlock());
+    }
+
+    /**
+     * Move the cursor back to the top and clear the selected destination
+     */
+    private void resetSelection() {
+        cursorIndex = 0;
+        gateListWindowIndex = 0;
+        selectedDestination = null;
+        if (portalActive) {
+            deactivatePortal();
+        }
+        ChunkPrewarmer.getInstance().release(this);
+        GateManager.getInstance().recordStateChange(this);
+    }
+
+    /**
+     * Check if the chunk containing the sign is loaded
+     *
+     * @return if the sign chunk is loaded
+     */
+    public boolean isSignChunkLoaded() {
+        return getWorld().isChunkLoaded(BlockKey.getX(signKey) >> 4, BlockKey.getZ(signKey) >> 4);
+    }
+
+    /**
+     * Get the packed position of the sign block
+     *
+     * @return packed sign position
+     */
+    public long getSignKey() {
+        return signKey;
+    }
+
     /**
      * Set the state of the display sign after the gate has been created for the first time
      *
@@ -137,7 +557,7 @@ public class Gate {
     public void setInitialSignState(Block signBlock) {
         BlockState state = signBlock.getState();
         if (!(state instanceof Sign)) {
-            Bukkit.getLogger().log(Level.INFO, "Block passed is not an instance of Sign");
+            Debug.log("Block passed is not an instance of Sign");
             return;
         }
         Sign sign = (Sign) state;
@@ -150,34 +570,38 @@ public class Gate {
     }
 
     /**
-     * Set the middle blocks of the gate to air
+     * Fill the middle blocks of the gate with the interior material of the shape
      */
     private void clearMiddleBlocks() {
-        Block[] middleBlocks = getMiddleBlocks();
-        for (Block block : middleBlocks) {
-            block.setType(Material.AIR);
-        }
+        PortalBlockWriter.getInstance().update(this);
     }
 
     /**
-     * Find the middle blocks of the gate and return them
+     * Set every middle block of the gate without physics
      *
-     * @return array of the middle blocks of the gate
+     * @param data             the block to set
+     * @param updateNeighbours apply physics to the last block, so the blocks around the opening are updated once
      */
-    private Block[] getMiddleBlocks() {
-        int[][] directionIndices = getDirectionIndices(direction);
-        Block[] middleBlocks = new Block[6];
-        Block nextBlock = getStartBlock().getRelative(BlockFace.UP);
-        middleBlocks[0] = nextBlock.getRelative(directionIndices[0][0], 0, directionIndices[1][0]);
-        middleBlocks[1] = nextBlock.getRelative(directionIndices[0][1], 0, directionIndices[1][1]);
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        middleBlocks[2] = nextBlock.getRelative(directionIndices[0][0], 0, directionIndices[1][0]);
-        middleBlocks[3] = nextBlock.getRelative(directionIndices[0][1], 0, directionIndices[1][1]);
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        middleBlocks[4] = nextBlock.getRelative(directionIndices[0][0], 0, directionIndices[1][0]);
-        middleBlocks[5] = nextBlock.getRelative(directionIndices[0][1], 0, directionIndices[1][1]);
+    void writeMiddleBlocks(BlockData data, boolean updateNeighbours) {
+        World world = getWorld();
+        int x = key.getX();
+        int y = key.getY();
+        int z = key.getZ();
+        int[] offsets = layout.getInteriorOffsets();
+        int last = offsets.length - 3;
+        for (int i = 0; i <= last; i += 3) {
+            Block block = world.getBlockAt(x + offsets[i], y + offsets[i + 1], z + offsets[i + 2]);
+            block.setBlockData(data, updateNeighbours && i == last);
+        }
+    }
 
-        return middleBlocks;
+    /**
+     * Get the number of middle blocks of the gate
+     *
+     * @return number of blocks in the opening
+     */
+    int getMiddleBlockCount() {
+        return layout.getInteriorOffsets().length / 3;
     }
 
     /**
@@ -187,36 +611,78 @@ public class Gate {
         if (selectedDestination == null) { // Only allow if destination has already been set
             return;
         }
-        Block[] middleBlocks = getMiddleBlocks();
-        for (Block block : middleBlocks) {
-            block.setType(Material.NETHER_PORTAL);
-            if (direction.equals(BlockFace.EAST) || direction.equals(BlockFace.WEST)) {
-                Orientable orientation = (Orientable) block.getBlockData();
-                orientation.setAxis(Axis.Z);
-                block.setBlockData(orientation);
-            }
-        }
+        long start = System.nanoTime();
         portalActive = true;
+        PortalBlockWriter.getInstance().update(this);
+        PortalIdleTimer.getInstance().touch(this);
+        ChunkPrewarmer.getInstance().prewarm(this, selectedDestination);
+        GateManager.getInstance().recordStateChange(this);
+        long nanos = System.nanoTime() - start;
+        Metrics.ACTIVATE_PORTAL.record(nanos);
+        FlightRecorder.getInstance().record(GateEventType.PORTAL_ACTIVATED, this, null, nanos);
+        GateActivatedEvent.call(this, true);
     }
 
     /**
-     * Set the portal to inactive and set the middle blocks to air
+     * Set the portal to inactive and fill the middle blocks with the interior material
      */
     public void deactivatePortal() {
-        Block[] middleBlocks = getMiddleBlocks();
-        for (Block block : middleBlocks) {
-            block.setType(Material.AIR);
-        }
+        long start = System.nanoTime();
         portalActive = false;
+        pendingPortalActive = false;
+        clearMiddleBlocks();
+        ChunkPrewarmer.getInstance().release(this);
+        GateManager.getInstance().recordStateChange(this);
+        long nanos = System.nanoTime() - start;
+        Metrics.DEACTIVATE_PORTAL.record(nanos);
+        FlightRecorder.getInstance().record(GateEventType.PORTAL_DEACTIVATED, this, null, nanos);
+        GateActivatedEvent.call(this, false);
     }
 
     /**
-     * Return if portal is active
+     * Return if portal is active. A gate that has not been placed in the world yet counts as active if its portal will
+     * be opened when it is placed
      *
      * @return if portal is active
      */
     public boolean portalIsActive() {
-        return portalActive;
+        return portalActive || pendingPortalActive;
+    }
+
+    /**
+     * Get the tick the portal closes on if it is not used again
+     *
+     * @return idle timer tick
+     */
+    long getIdleDeadline() {
+        return idleDeadline;
+    }
+
+    /**
+     * Set the tick the portal closes on if it is not used again
+     *
+     * @param idleDeadline idle timer tick
+     */
+    void setIdleDeadline(long idleDeadline) {
+        this.idleDeadline = idleDeadline;
+    }
+
+    /**
+     * Check if the gate is in the idle timer's wheel
+     *
+     * @return if the gate is scheduled
+     */
+    boolean isIdleScheduled() {
+        return idleScheduled;
+    }
+
+    /**
+     * Set if the gate is in the idle timer's wheel
+     *
+     * @param idleScheduled if the gate is scheduled
+     */
+    void setIdleScheduled(boolean idleScheduled) {
+        this.idleScheduled = idleScheduled;
     }
 
     /**
@@ -225,8 +691,8 @@ public class Gate {
      * @return button block
      */
     private Block getButtonBlock() {
-        int[][] directionIndices = getDirectionIndices(direction);
-        return getSignBlock().getRelative(directionIndices[0][2], 0, directionIndices[1][2]);
+        int[] offset = layout.getButtonOffset();
+        return getWorld().getBlockAt(key.getX() + offset[0], key.getY() + offset[1], key.getZ() + offset[2]);
     }
 
     /**
@@ -236,7 +702,315 @@ public class Gate {
      * @return If the button does belong to the gate
      */
     public boolean buttonBelongsToGate(Block button) {
-        return getButtonBlock().getLocation().equals(button.getLocation());
+        return BlockKey.pack(button) == buttonKey && isInSameWorld(button);
+    }
+
+    /**
+     * Check if a block is in the same world as the gate
+     *
+     * @param block the block to check
+     * @return if the block is in the gate world
+     */
+    private boolean isInSameWorld(Block block) {
+        return WorldIndex.getId(block.getWorld()) == key.getWorldIndex();
+    }
+
+    /**
+     * Get the packed positions of every block that belongs to the gate: the sign, the button, the frame and the middle
+     *
+     * @return array of packed block positions
+     */
+    public long[] getOwnedBlockKeys() {
+        int[] interiorOffsets = layout.getInteriorOffsets();
+        long[] keys = new long[2 + frameKeys.length + interiorOffsets.length / 3];
+        int count = 0;
+        keys[count++] = signKey;
+        keys[count++] = buttonKey;
+        for (long frameKey : frameKeys) {
+            keys[count++] = frameKey;
+        }
+        for (int i = 0; i < interiorOffsets.length; i += 3) {
+            keys[count++] = packOffset(interiorOffsets, i);
+        }
+        return keys;
+    }
+
+    /**
+     * Get where players arrive when travelling to this gate. The location is worked out once and kept until a block in
+     * the arrival area changes. The returned location is shared and must not be modified
+     *
+     * @return the arrival location, or null if there is nowhere safe to land
+     */
+    public Location getArrivalLocation() {
+        if (!arrivalCalculated) {
+            arrivalLocation = findArrivalLocation();
+            arrivalCalculated = true;
+        }
+        return arrivalLocation;
+    }
+
+    /**
+     * Forget the arrival location, so it is worked out again before the next arrival
+     */
+    public void invalidateArrivalLocation() {
+        arrivalCalculated = false;
+        arrivalLocation = null;
+    }
+
+    /**
+     * Get the packed x/z columns that are searched for a safe landing spot. Any block change in these columns near the
+     * gate can change the arrival location. The y of each key is always 0
+     *
+     * @return array of packed columns
+     */
+    public long[] getArrivalColumnKeys() {
+        int[][] columns = getArrivalColumns();
+        long[] keys = new long[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            keys[i] = BlockKey.pack(columns[i][0], 0, columns[i][1]);
+        }
+        return keys;
+    }
+
+    /**
+     * Check if a block y coordinate is close enough to the gate to affect the arrival location
+     *
+     * @param y block y coordinate
+     * @return if the block is in the arrival area
+     */
+    public boolean isInArrivalHeight(int y) {
+        int arrivalY = key.getY() + layout.getArrivalHeight();
+        return y <= arrivalY + 1 && y >= arrivalY - 2 - ARRIVAL_DROP_LIMIT;
+    }
+
+    /**
+     * Check if a location is in or next to the opening of the gate, where a player touching the portal would be
+     *
+     * @param location the location
+     * @return if the location is within a block of the opening
+     */
+    public boolean isInPortalArea(Location location) {
+        int dx = location.getBlockX() - key.getX();
+        int dy = location.getBlockY() - key.getY();
+        int dz = location.getBlockZ() - key.getZ();
+        int alongX = layout.getAlongX();
+        int alongZ = layout.getAlongZ();
+        int across = dx * alongX + dz * alongZ;
+        int out = dx * alongZ - dz * alongX;
+        return across >= 0 && across <= layout.getWidth() + 1
+                && out >= -1 && out <= 1
+                && dy >= layout.getBottom() - 1 && dy <= layout.getTop() + 1;
+    }
+
+    /**
+     * Get the x/z of the columns searched for a landing spot, in order of preference: the opening of the gate, then
+     * in front of it, then behind it. Each row starts from the far side of the opening
+     *
+     * @return array of {x, z} pairs
+     */
+    private int[][] getArrivalColumns() {
+        int width = layout.getWidth();
+        int x = key.getX();
+        int z = key.getZ();
+        BlockFace direction = key.getDirection();
+        int frontX = direction.getModX();
+        int frontZ = direction.getModZ();
+        int[][] columns = new int[width * 3][];
+        int count = 0;
+        for (int side = 0; side < 3; side++) {
+            int offset = side == 0 ? 0 : side == 1 ? 1 : -1;
+            for (int across = width; across >= 1; across--) {
+                columns[count++] = new int[]{
+                        x + layout.getAlongX() * across + frontX * offset,
+                        z + layout.getAlongZ() * across + frontZ * offset};
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Find a safe spot to arrive at. The spot used before arrival locations were checked is tried first, so players
+     * still arrive in the same place at gates that are not obstructed
+     *
+     * @return the arrival location, or null if there is nowhere safe to land
+     */
+    private Location findArrivalLocation() {
+        World world = getWorld();
+        float yaw = getArrivalYaw();
+        int y = key.getY() + layout.getArrivalHeight();
+
+        // Original arrival spot: a quarter of a block past the middle of the opening, measured from the start block
+        double distance = 0.75 + layout.getWidth() / 2.0;
+        double arrivalX = key.getX() + 0.5 + distance * layout.getAlongX();
+        double arrivalZ = key.getZ() + 0.5 + distance * layout.getAlongZ();
+        if (isSafeArrival(world, (int) Math.floor(arrivalX), y, (int) Math.floor(arrivalZ))) {
+            return new Location(world, arrivalX, y, arrivalZ, yaw, 0);
+        }
+
+        // Fall back to the other columns, standing on the ground
+        for (int[] column : getArrivalColumns()) {
+            for (int feetY = y; feetY >= y - 1; feetY--) {
+                if (isSafeArrival(world, column[0], feetY, column[1])) {
+                    return new Location(world, column[0] + 0.5, feetY, column[1] + 0.5, yaw, 0);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the yaw players face on arrival, so they are looking out of the gate
+     *
+     * @return the yaw
+     */
+    private float getArrivalYaw() {
+        BlockFace direction = key.getDirection();
+        switch (direction) {
+            case NORTH:
+            case SOUTH:
+                return direction.getModZ() < 0 ? 180F : 0F;
+            case EAST:
+            case WEST:
+                return direction.getModX() < 0 ? 90F : -90F;
+            default:
+                return 0F;
+        }
+    }
+
+    /**
+     * Check if a player can stand at a position: feet and head are not solid or lava, and there is solid ground a short
+     * fall below without any lava on the way
+     *
+     * @param world the world
+     * @param x     feet block x
+     * @param y     feet block y
+     * @param z     feet block z
+     * @return if the position is safe
+     */
+    private static boolean isSafeArrival(World world, int x, int y, int z) {
+        if (!isPassable(world.getBlockAt(x, y, z).getType()) || !isPassable(world.getBlockAt(x, y + 1, z).getType())) {
+            return false;
+        }
+        for (int below = 1; below <= ARRIVAL_DROP_LIMIT; below++) {
+            Material ground = world.getBlockAt(x, y - below, z).getType();
+            if (ground == Material.LAVA) {
+                return false;
+            }
+            if (ground.isSolid()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPassable(Material material) {
+        return !material.isSolid() && material != Material.LAVA && material != Material.FIRE;
+    }
+
+    /**
+     * Get the index of a block in the structure: the frame blocks, then the sign, then the button
+     *
+     * @param key packed block position
+     * @return the index, or -1 if the block is not part of the structure (ie a middle block)
+     */
+    private int getStructureBit(long key) {
+        if (key == signKey) {
+            return frameKeys.length;
+        }
+        if (key == buttonKey) {
+            return frameKeys.length + 1;
+        }
+        for (int i = 0; i < frameKeys.length; i++) {
+            if (frameKeys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Record that a block of the gate has been destroyed
+     *
+     * @param key packed position of the destroyed block
+     * @return true if this broke a part of the gate that was previously intact
+     */
+    public boolean markBlockDestroyed(long key) {
+        int bit = getStructureBit(key);
+        if (bit < 0 || (destroyedBlocks != null && destroyedBlocks.get(bit))) {
+            return false;
+        }
+        if (destroyedBlocks == null) {
+            destroyedBlocks = new BitSet(frameKeys.length + 2);
+        }
+        destroyedBlocks.set(bit);
+        return true;
+    }
+
+    /**
+     * Check if the frame, sign and button of the gate are all still in place
+     *
+     * @return if the gate is intact
+     */
+    public boolean isIntact() {
+        return destroyedBlocks == null || destroyedBlocks.isEmpty();
+    }
+
+    /**
+     * Check if the gate has been torn down
+     *
+     * @return if the gate has been removed
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Let go of the gate when its world unloads. The blocks are left as they are, and the gate is created again from
+     * its record if the world loads again
+     */
+    public void unload() {
+        removed = true;
+        materialised = false;
+        pendingPortalActive = false;
+        selectedDestination = null;
+        destinations = null;
+        arrivalLocation = null;
+    }
+
+    /**
+     * Drop references to gates that have been removed or unloaded: the cached destinations, and the selection if it is
+     * one of them
+     */
+    public void forgetRemovedGates() {
+        destinations = null;
+        if (selectedDestination != null && selectedDestination.isRemoved()) {
+            pendingPortalActive = false;
+            resetSelection();
+        }
+    }
+
+    /**
+     * Tear the gate down after its structure has been broken. Closes the portal and resets the sign
+     */
+    public void tearDown() {
+        removed = true;
+        selectedDestination = null;
+        if (portalActive) {
+            deactivatePortal();
+        }
+        if (destroyedBlocks != null && destroyedBlocks.get(frameKeys.length)) {
+            return; // Sign is already gone
+        }
+        BlockState state = getSignBlock().getState();
+        if (state instanceof Sign) {
+            Sign sign = (Sign) state;
+            sign.setLine(0, name);
+            sign.setLine(1, network); // So the gate can be rebuilt in the same network
+            for (int i = 2; i < 4; i++) {
+                sign.setLine(i, "");
+            }
+            sign.update();
+        }
     }
 
     /**
@@ -245,7 +1019,9 @@ public class Gate {
      * @return the sign block
      */
     public Block getSignBlock() {
-        return startBlock.getRelative(direction);
+        BlockFace direction = key.getDirection();
+        return getWorld().getBlockAt(key.getX() + direction.getModX(), key.getY() + direction.getModY(),
+                key.getZ() + direction.getModZ());
     }
 
     /**
@@ -264,40 +1040,148 @@ public class Gate {
      * @return if the sign belongs to the gate
      */
     public boolean signBelongsToGate(Block sign) {
-        return getSignBlock().getLocation().equals(sign.getLocation());
+        return BlockKey.pack(sign) == signKey && isInSameWorld(sign);
     }
 
     /**
      * Cycle the destinations on the sign and set the selected Gate
      */
     public void selectDestination() {
-        GateManager gateManager = GateManager.getInstance();
-        List<Gate> gates = gateManager.getActiveGates(true, this);
-        Sign sign = getSignBlockState();
+        selectDestination(false);
+    }
+
+    /**
+     * Move the selection on the sign to the next destination, or a whole window of destinations further on. Wraps
+     * round to the top after the last destination
+     *
+     * @param page move by a whole window instead of one destination
+     */
+    public void selectDestination(boolean page) {
+        long start = System.nanoTime();
+        List<Gate> gates = GateManager.getInstance().getActiveGates(true, this);
+        if (gates.isEmpty()) {
+            return; // Nowhere to go
+        }
+        int size = gates.size();
+        int index;
+        if (cursorIndex == 0) {
+            index = 0; // Nothing selected yet
+        } else {
+            int current = gateListWindowIndex + cursorIndex - 1;
+            index = current + (page ? SIGN_LIST_LINES : 1);
+            if (index >= size) {
+                // Stop on the last destination before wrapping, so paging never skips past it
+                index = page && current < size - 1 ? size - 1 : 0;
+            }
+        }
+        moveCursorTo(index, size, page);
+        showSelection(gates, start);
+    }
 
-        int windowEnd = gateListWindowIndex + 2;
-        int listEndPos = gates.size() - 1;
+    /**
+     * Move the selection on the sign to the first destination whose name starts with a prefix
+     *
+     * @param prefix the start of a gate name, in any case
+     * @return false if no destination starts with the prefix
+     */
+    public boolean jumpToDestination(String prefix) {
+        long start = System.nanoTime();
+        List<Gate> gates = GateManager.getInstance().getActiveGates(true, this);
+        String key = GateNameRegistry.normalise(prefix);
+        int index = lowerBound(gates, key);
+        if (index >= gates.size() || !gates.get(index).getNameKey().startsWith(key)) {
+            return false;
+        }
+        moveCursorTo(index, gates.size(), false);
+        showSelection(gates, start);
+        return true;
+    }
 
-        if (gates.size() > cursorIndex && cursorIndex < 3) { // Move the curson down
-            cursorIndex++;
-            renderDisplay(sign, gates, cursorIndex, gateListWindowIndex);
-        } else if (windowEnd < listEndPos) { // Scroll the list up without moving the cursor
+    /**
+     * Set the window and cursor so a destination is shown and selected. Moving to a destination just below the window
+     * scrolls by one line; any other move outside the window puts the destination at the top, or keeps the cursor on
+     * the same line when paging
+     *
+     * @param index index of the destination
+     * @param size  number of destinations
+     * @param page  keep the cursor on its line if the window moves
+     */
+    private void moveCursorTo(int index, int size, boolean page) {
+        int windowEnd = gateListWindowIndex + SIGN_LIST_LINES;
+        if (index >= gateListWindowIndex && index < windowEnd && index < size) {
+            cursorIndex = index - gateListWindowIndex + 1;
+            return;
+        }
+        if (!page && index == windowEnd) {
             gateListWindowIndex++;
-            renderDisplay(sign, gates, cursorIndex, gateListWindowIndex);
-        } else { // Reset everything to the top
-            cursorIndex = 1;
-            gateListWindowIndex = 0;
-            renderDisplay(sign, gates, cursorIndex, gateListWindowIndex);
+            cursorIndex = SIGN_LIST_LINES;
+            return;
         }
+        int line = page ? Math.max(cursorIndex, 1) : 1;
+        gateListWindowIndex = Math.max(0, index - line + 1);
+        cursorIndex = index - gateListWindowIndex + 1;
+    }
 
-        int gateListIndex = gateListWindowIndex + Math.max(cursorIndex, 1) - 1;
-        Gate destinationGate = gates.get(gateListIndex);
+    /**
+     * Draw the selection on the sign and make the destination under the cursor the selected destination
+     *
+     * @param gates the destinations
+     * @param start when handling the click started
+     */
+    private void showSelection(List<Gate> gates, long start) {
+        Sign sign = getSignBlockState();
+        renderDisplay(sign, gates, cursorIndex, gateListWindowIndex);
+        sign.update();
+
+        Gate destinationGate = gates.get(gateListWindowIndex + cursorIndex - 1);
         selectedDestination = destinationGate;
-        Bukkit.getLogger().log(Level.INFO, "Destination gate set to: " + destinationGate.getName());
+        if (portalActive) {
+            // Scrolling through destinations does not load them; only the one the open portal leads to
+            ChunkPrewarmer.getInstance().prewarm(this, destinationGate);
+        }
+        GateManager.getInstance().recordStateChange(this);
+        FlightRecorder.getInstance().record(GateEventType.DESTINATION_SELECTED, this, null, System.nanoTime() - start);
+        if (Debug.isEnabled()) {
+            Debug.log("Destination gate set to: " + destinationGate.getName());
+        }
+    }
+
+    /**
+     * Find a gate in a list of destinations sorted by name
+     *
+     * @param gates the destinations
+     * @param gate  the gate to find
+     * @return index of the gate, or -1 if it is not in the list
+     */
+    private static int findDestination(List<Gate> gates, Gate gate) {
+        int index = lowerBound(gates, gate.getNameKey());
+        return index < gates.size() && gates.get(index) == gate ? index : -1;
+    }
+
+    /**
+     * Find the first gate in a list sorted by name whose name is not before a key
+     *
+     * @param gates the gates, sorted by name
+     * @param key   normalised name or prefix
+     * @return index of the gate, or the size of the list if every name is before the key
+     */
+    static int lowerBound(List<Gate> gates, String key) {
+        int low = 0;
+        int high = gates.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (gates.get(middle).getNameKey().compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
     }
 
     /**
-     * Render the destinations on the display sign. Since signs can only display 3 lines, we must scroll through the destinations as needed
+     * Render the destinations on the display sign. Since signs can only display 3 lines, we must scroll through the destinations as needed.
+     * The caller is responsible for updating the sign afterwards
      *
      * @param sign           the sign to render on
      * @param destinations   the list of total destinations
@@ -306,11 +1190,8 @@ public class Gate {
      */
     private void renderDisplay(Sign sign, List<Gate> destinations, int cursorPosition, int listPosition) {
         int size = destinations.size();
-        if (size == 0) {
-            return;
-        }
         int index = listPosition;
-        for (int i = 1; i < 4; i++) {
+        for (int i = 1; i <= SIGN_LIST_LINES; i++) {
             String name;
             if (index < size) {
                 Gate gate = destinations.get(index);
@@ -324,130 +1205,43 @@ public class Gate {
             sign.setLine(i, name);
             index++;
         }
-        sign.update();
     }
 
     /**
-     * Get how many blocks to move in each direction, depending on the direction
-     *
-     * @return 2d array, where first item is array of x indices and second is z indices
+     * Place the button on the far side of the frame, facing the same way as the sign
      */
-    private static int[][] getDirectionIndices(BlockFace direction) {
-        // assume north facing as default
-        int[] xIndex = new int[]{1, 2, 3};
-        int[] zIndex = new int[]{1, 2, 3};
-        if (direction == BlockFace.NORTH) {
-            zIndex[0] = 0;
-            zIndex[1] = 0;
-            zIndex[2] = 0;
-        }
-        if (direction == BlockFace.SOUTH) {
-            xIndex[0] = -1;
-            xIndex[1] = -2;
-            xIndex[2] = -3;
-            zIndex[0] = 0;
-            zIndex[1] = 0;
-            zIndex[2] = 0;
-        }
-        if (direction == BlockFace.EAST) {
-            xIndex[0] = 0;
-            xIndex[1] = 0;
-            xIndex[2] = 0;
-        }
-        if (direction == BlockFace.WEST) {
-            xIndex[0] = 0;
-            xIndex[1] = 0;
-            xIndex[2] = 0;
-            zIndex[0] = -1;
-            zIndex[1] = -2;
-            zIndex[2] = -3;
-        }
-        return new int[][]{
-                xIndex,
-                zIndex,
-        };
-    }
-
-    private void addButton(Block signBlock, BlockFace direction) {
-        int[][] directionIndices = getDirectionIndices(direction);
-
-        Block buttonBlock = signBlock.getRelative(directionIndices[0][2], 0, directionIndices[1][2]);
+    private void addButton() {
+        Block buttonBlock = getButtonBlock();
         buttonBlock.setType(Material.STONE_BUTTON);
         Directional data = (Directional) buttonBlock.getBlockData();
-        data.setFacing(direction);
+        data.setFacing(key.getDirection());
         buttonBlock.setBlockData(data);
     }
 
     /**
-     * Check if the blocks can form a gate, starting from the center right block where the sign was placed
+     * Check if the blocks can form a gate of any shape, starting from the block the sign was placed against
      *
      * @param startBlock block the sign was placed against
      * @param direction  direction the gate is facing
      * @return if the blocks can form a gate
      */
     public static boolean checkBlocksAreValid(Block startBlock, BlockFace direction) {
-        Block topRight = startBlock.getRelative(0, 2, 0);
-        return checkGate(topRight, direction);
-    }
-
-    // assuming base block is top right corner
-
-    /**
-     * Check if a gate is valid. To be valid it must have the same shape and materials as a vanilla nether portal
-     *
-     * @param baseBlock the start block to check. This must be the top right corner of the gate
-     * @param direction the direction the gate is facing
-     * @return if the gate is valid or not
-     */
-    private static boolean checkGate(Block baseBlock, BlockFace direction) {
-        Block nextBlock = baseBlock;
-
-        // This should be a loop lol
-        boolean topLine = checkGateLine(nextBlock, direction, true);
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        boolean firstLine = checkGateLine(nextBlock, direction, false);
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        boolean secondLine = checkGateLine(nextBlock, direction, false); // aka middle
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        boolean thirdLine = checkGateLine(nextBlock, direction, false);
-        nextBlock = nextBlock.getRelative(BlockFace.DOWN);
-        boolean bottomLine = checkGateLine(nextBlock, direction, true);
-
-        return topLine && firstLine && secondLine && thirdLine && bottomLine;
+        return findShape(startBlock, direction) != null;
     }
 
     /**
-     * Check if a line of the gate is valid
+     * Find the shape the blocks around the block the sign was placed against make. Shapes are tried in the order they
+     * are configured
      *
-     * @param baseBlock the start block. This should be the rightmost block in the line
-     * @param direction the direction of the gate
-     * @param isEndLine if the line is the top of bottom of the gate
-     * @return if the line is valid
+     * @param startBlock block the sign was placed against
+     * @param direction  direction the gate is facing
+     * @return the shape, or null if the blocks do not form a gate
      */
-    private static boolean checkGateLine(Block baseBlock, BlockFace direction, boolean isEndLine) {
-        // assume north facing as default
-        int[][] directionIndices = getDirectionIndices(direction);
-        Block mid1 = baseBlock.getRelative(directionIndices[0][0], 0, directionIndices[1][0]);
-        Block mid2 = baseBlock.getRelative(directionIndices[0][1], 0, directionIndices[1][1]);
-        Block opposite = baseBlock.getRelative(directionIndices[0][2], 0, directionIndices[1][2]);
-        // Check block positions are correct
-        if (isEndLine) {
-            if (mid1.getType() != Material.OBSIDIAN) {
-                return false;
-            }
-            if (mid2.getType() != Material.OBSIDIAN) {
-                return false;
-            }
-        } else {
-            if (baseBlock.getType() != Material.OBSIDIAN) {
-                return false;
-            }
-            if (opposite.getType() != Material.OBSIDIAN) {
-                return false;
-            }
-        }
-
-        return true;
+    public static GateShape findShape(Block startBlock, BlockFace direction) {
+        long start = System.nanoTime();
+        GateShape shape = GateShapes.match(startBlock, direction);
+        Metrics.CHECK_BLOCKS.recordSince(start);
+        return shape;
     }
 
     /**
@@ -458,4 +1252,36 @@ public class Gate {
     public Gate getSelectedDestination() {
         return selectedDestination;
     }
+
+    /**
+     * Read only view over a gates snapshot that skips a single index
+     */
+    private static class DestinationList extends AbstractList<Gate> {
+        private final List<Gate> gates;
+        private final int skipIndex;
+
+        /**
+         * Construct a new view
+         *
+         * @param gates     the snapshot to view
+         * @param skipIndex index to skip, or -1 to skip nothing
+         */
+        DestinationList(List<Gate> gates, int skipIndex) {
+            this.gates = gates;
+            this.skipIndex = skipIndex;
+        }
+
+        @Override
+        public Gate get(int index) {
+            if (skipIndex >= 0 && index >= skipIndex) {
+                index++;
+            }
+            return gates.get(index);
+        }
+
+        @Override
+        public int size() {
+            return skipIndex >= 0 ? gates.size() - 1 : gates.size();
+        }
+    }
 }
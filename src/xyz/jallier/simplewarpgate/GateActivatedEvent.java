@@ -0,0 +1,71 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called after a gate's portal has opened or closed
+ */
+public class GateActivatedEvent extends GateEvent {
+    private static final HandlerList handlers = new HandlerList();
+
+    private final GateInfo destination;
+    private final boolean active;
+
+    /**
+     * Construct a new event
+     *
+     * @param gate        the gate whose portal changed
+     * @param destination the gate the portal leads to, or null if it has none
+     * @param active      if the portal opened, rather than closed
+     */
+    GateActivatedEvent(Gate gate, Gate destination, boolean active) {
+        super(gate);
+        this.destination = GateInfo.of(destination);
+        this.active = active;
+    }
+
+    /**
+     * Call the event if anything is listening for it
+     *
+     * @param gate   the gate whose portal changed
+     * @param active if the portal opened, rather than closed
+     */
+    static void call(Gate gate, boolean active) {
+        if (hasListeners(handlers)) {
+            Bukkit.getPluginManager().callEvent(new GateActivatedEvent(gate, gate.getSelectedDestination(), active));
+        }
+    }
+
+    /**
+     * Get the gate the portal leads to
+     *
+     * @return the destination gate, or null if none is selected
+     */
+    public GateInfo getDestination() {
+        return destination;
+    }
+
+    /**
+     * Check if the portal opened or closed
+     *
+     * @return true if the portal opened, false if it closed
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the handlers of this event
+     *
+     * @return the handler list
+     */
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
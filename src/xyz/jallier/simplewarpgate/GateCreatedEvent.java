@@ -0,0 +1,73 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called after a gate has been added, either built by a player or loaded with its world
+ */
+public class GateCreatedEvent extends GateEvent {
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * Why the gate was added
+     */
+    public enum Reason {
+        /**
+         * A player built the gate
+         */
+        BUILT,
+        /**
+         * The gate was loaded from file, when the plugin started or its world loaded
+         */
+        LOADED
+    }
+
+    private final Reason reason;
+
+    /**
+     * Construct a new event
+     *
+     * @param gate   the gate that was added
+     * @param reason why it was added
+     */
+    GateCreatedEvent(Gate gate, Reason reason) {
+        super(gate);
+        this.reason = reason;
+    }
+
+    /**
+     * Call the event if anything is listening for it
+     *
+     * @param gate   the gate that was added
+     * @param reason why it was added
+     */
+    static void call(Gate gate, Reason reason) {
+        if (hasListeners(handlers)) {
+            Bukkit.getPluginManager().callEvent(new GateCreatedEvent(gate, reason));
+        }
+    }
+
+    /**
+     * Get why the gate was added
+     *
+     * @return the reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the handlers of this event
+     *
+     * @return the handler list
+     */
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
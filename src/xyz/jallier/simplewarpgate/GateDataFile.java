@@ -0,0 +1,458 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.block.BlockFace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Writes the gate data file, and decodes the parts of it that {@link GateDataLoader} reads.
+ * <p>
+ * The file is binary: a header, a table of world names and UUIDs, tables of gate shape and network names, one fixed
+ * width record per gate, the gate names packed together, and a CRC32 of everything before it. Old plain text files,
+ * with one gate per line, are still read, so they are migrated the next time the file is written
+ */
+public final class GateDataFile {
+    /**
+     * "SWGB"
+     */
+    private static final int MAGIC = 0x53574742;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int RECORD_SIZE = 36;
+    private static final int FLAG_PORTAL_ACTIVE = 1;
+    private static final BlockFace[] FACES = BlockFace.values();
+
+    private GateDataFile() {
+    }
+
+    /**
+     * Check if a file starts with the binary format header
+     *
+     * @param file the file
+     * @return if the file is in the binary format
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isBinary(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.length() >= HEADER_SIZE && raf.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Read a whole file into a heap buffer. The file is not memory mapped: a mapping holds the file open until it is
+     * garbage collected, and on Windows that stops the file being replaced when the data is next written
+     *
+     * @param file the file
+     * @return buffer holding the whole file, positioned at the start
+     * @throws IOException if the file could not be read, or is too big to hold in one buffer
+     */
+    public static ByteBuffer readFully(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data file is too big: " + size + " bytes");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Data file ended early");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Positions of the sections of a binary data file
+     */
+    public static final class Layout {
+        private final String[] worlds;
+        /**
+         * World UUIDs, with null entries for worlds whose UUID was not known, such as those migrated from a text file
+         */
+        private final UUID[] worldIds;
+        private final String[] shapes;
+        private final String[] networks;
+        private final int gateCount;
+        private final int recordsStart;
+        private final int namesStart;
+        private final int namesLength;
+
+        private Layout(String[] worlds, UUID[] worldIds, String[] shapes, String[] networks, int gateCount,
+                       int recordsStart, int namesStart, int namesLength) {
+            this.worlds = worlds;
+            this.worldIds = worldIds;
+            this.shapes = shapes;
+            this.networks = networks;
+            this.gateCount = gateCount;
+            this.recordsStart = recordsStart;
+            this.namesStart = namesStart;
+            this.namesLength = namesLength;
+        }
+
+        /**
+         * Get the number of gate records
+         *
+         * @return number of records
+         */
+        public int getGateCount() {
+            return gateCount;
+        }
+    }
+
+    /**
+     * Check the CRC32 at the end of a binary data file
+     *
+     * @param buffer buffer holding the whole file
+     * @return if the checksum matches
+     */
+    public static boolean checksumMatches(ByteBuffer buffer) {
+        int length = buffer.limit();
+        if (length < HEADER_SIZE + 4) {
+            return false;
+        }
+        ByteBuffer checked = buffer.duplicate();
+        checked.position(0);
+        checked.limit(length - 4);
+        CRC32 crc = new CRC32();
+        crc.update(checked);
+        return (int) crc.getValue() == buffer.getInt(length - 4);
+    }
+
+    /**
+     * Read the header and name tables of a binary data file
+     *
+     * @param buffer buffer holding the whole file
+     * @return the file layout
+     * @throws IOException if the header is not valid
+     */
+    public static Layout readLayout(ByteBuffer buffer) throws IOException {
+        ByteBuffer header = buffer.duplicate();
+        header.position(0);
+        if (header.limit() < HEADER_SIZE + 4 || header.getInt() != MAGIC) {
+            throw new IOException("Not a SimpleWarpGate data file");
+        }
+        short version = header.getShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported data file version " + version);
+        }
+        header.getShort(); // flags, unused
+        int worldCount = header.getInt();
+        int gateCount = header.getInt();
+        int namesLength = header.getInt();
+        int shapeCount = header.getInt();
+        int networkCount = header.getInt();
+        if (worldCount < 0 || gateCount < 0 || namesLength < 0 || shapeCount < 0 || networkCount < 0) {
+            throw new IOException("Data file header is damaged");
+        }
+
+        try {
+            String[] worlds = new String[worldCount];
+            UUID[] worldIds = new UUID[worldCount];
+            for (int i = 0; i < worldCount; i++) {
+                worlds[i] = readName(header);
+                long most = header.getLong();
+                long least = header.getLong();
+                worldIds[i] = most == 0 && least == 0 ? null : new UUID(most, least);
+            }
+            String[] shapes = readNameTable(header, shapeCount);
+            String[] networks = readNameTable(header, networkCount);
+            int recordsStart = header.position();
+            long namesStart = recordsStart + (long) gateCount * RECORD_SIZE;
+            if (namesStart + namesLength + 4 != header.limit()) {
+                throw new IOException("Data file sections do not add up to the file size");
+            }
+            return new Layout(worlds, worldIds, shapes, networks, gateCount, recordsStart, (int) namesStart,
+                    namesLength);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Data file name tables are truncated", e);
+        }
+    }
+
+    /**
+     * Read a table of names, each a length followed by UTF-8 bytes
+     *
+     * @param buffer buffer positioned at the start of the table
+     * @param count  number of names
+     * @return the names
+     */
+    private static String[] readNameTable(ByteBuffer buffer, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = readName(buffer);
+        }
+        return names;
+    }
+
+    /**
+     * Read a name written as a length followed by UTF-8 bytes
+     *
+     * @param buffer buffer positioned at the start of the name
+     * @return the name
+     */
+    private static String readName(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode the name of a gate record
+     *
+     * @param buffer  buffer holding the whole file. Its position is changed, so each thread needs its own duplicate
+     * @param layout  the file layout
+     * @param index   the record index
+     * @param scratch buffer to copy the name bytes through. Must be at least 65535 bytes
+     * @return the gate name
+     * @throws IllegalArgumentException if the name is outside the name section
+     */
+    public static String decodeName(ByteBuffer buffer, Layout layout, int index, byte[] scratch) {
+        int record = layout.recordsStart + index * RECORD_SIZE;
+        int nameOffset = buffer.getInt(record + 16);
+        int nameLength = buffer.getShort(record + 20) & 0xFFFF;
+        if (nameOffset < 0 || nameLength == 0 || (long) nameOffset + nameLength > layout.namesLength) {
+            throw new IllegalArgumentException("Name is outside the name section");
+        }
+        buffer.position(layout.namesStart + nameOffset);
+        buffer.get(scratch, 0, nameLength);
+        return new String(scratch, 0, nameLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decode a gate record
+     *
+     * @param buffer buffer holding the whole file. Only absolute reads are used
+     * @param layout the file layout
+     * @param index  the record index
+     * @param names  the decoded name of every record, null where the name could not be decoded
+     * @return the record
+     * @throws IllegalArgumentException if the record is not valid
+     */
+    public static GateRecord decodeRecord(ByteBuffer buffer, Layout layout, int index, String[] names) {
+        if (names[index] == null) {
+            throw new IllegalArgumentException("Name could not be read");
+        }
+        int record = layout.recordsStart + index * RECORD_SIZE;
+        int worldIndex = buffer.getShort(record) & 0xFFFF;
+        if (worldIndex >= layout.worlds.length) {
+            throw new IllegalArgumentException("World index " + worldIndex + " is not in the world table");
+        }
+        int directionOrdinal = buffer.get(record + 2);
+        if (directionOrdinal < 0 || directionOrdinal >= FACES.length) {
+            throw new IllegalArgumentException("Direction " + directionOrdinal + " is not valid");
+        }
+        int flags = buffer.get(record + 3);
+        int x = buffer.getInt(record + 4);
+        int y = buffer.getInt(record + 8);
+        int z = buffer.getInt(record + 12);
+        int cursorIndex = buffer.getShort(record + 22);
+        int gateListWindowIndex = buffer.getInt(record + 24);
+        int destinationIndex = buffer.getInt(record + 28);
+        String destinationName = null;
+        if (destinationIndex >= 0 && destinationIndex < names.length) {
+            destinationName = names[destinationIndex];
+        }
+        int shapeIndex = buffer.getShort(record + 32) & 0xFFFF;
+        if (shapeIndex >= layout.shapes.length) {
+            throw new IllegalArgumentException("Shape index " + shapeIndex + " is not in the shape table");
+        }
+        int networkIndex = buffer.getShort(record + 34) & 0xFFFF;
+        if (networkIndex >= layout.networks.length) {
+            throw new IllegalArgumentException("Network index " + networkIndex + " is not in the network table");
+        }
+        return new GateRecord(names[index], layout.worlds[worldIndex], layout.worldIds[worldIndex], x, y, z,
+                FACES[directionOrdinal], layout.shapes[shapeIndex], layout.networks[networkIndex], destinationName, cursorIndex, gateListWindowIndex,
+                (flags & FLAG_PORTAL_ACTIVE) != 0);
+    }
+
+    /**
+     * Copy out the fixed width part of a gate record that could not be decoded, so it can be kept in the quarantine
+     * file
+     *
+     * @param buffer buffer holding the whole file. Only absolute reads are used
+     * @param layout the file layout
+     * @param index  the record index
+     * @return the record bytes, Base64 encoded
+     */
+    public static String encodeRawRecord(ByteBuffer buffer, Layout layout, int index) {
+        int record = layout.recordsStart + index * RECORD_SIZE;
+        byte[] bytes = new byte[RECORD_SIZE];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(record + i);
+        }
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * A table of distinct names written before the records, which refer to names by index. A table of worlds also
+     * holds the UUID of each world, so two worlds with the same name are kept apart
+     */
+    private static final class NameTable {
+        private final boolean withIds;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> entries = new ArrayList<>();
+        private final List<UUID> ids = new ArrayList<>();
+        /**
+         * Encoded size of the table in bytes
+         */
+        private int length = 0;
+
+        private NameTable(boolean withIds) {
+            this.withIds = withIds;
+        }
+
+        private void add(String name) {
+            add(name, null);
+        }
+
+        private void add(String name, UUID id) {
+            String key = key(name, id);
+            if (!indexes.containsKey(key)) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                indexes.put(key, entries.size());
+                entries.add(bytes);
+                ids.add(id);
+                length += 2 + bytes.length + (withIds ? 16 : 0);
+            }
+        }
+
+        private int indexOf(String name) {
+            return indexOf(name, null);
+        }
+
+        private int indexOf(String name, UUID id) {
+            return indexes.get(key(name, id));
+        }
+
+        private void write(ByteBuffer buffer) {
+            for (int i = 0; i < entries.size(); i++) {
+                byte[] entry = entries.get(i);
+                buffer.putShort((short) entry.length);
+                buffer.put(entry);
+                if (withIds) {
+                    UUID id = ids.get(i);
+                    // An all zero UUID marks a world whose UUID is not known
+                    buffer.putLong(id == null ? 0 : id.getMostSignificantBits());
+                    buffer.putLong(id == null ? 0 : id.getLeastSignificantBits());
+                }
+            }
+        }
+
+        private static String key(String name, UUID id) {
+            return id == null ? name : name + "\u0000" + id;
+        }
+    }
+
+    /**
+     * Encode gates in the binary format
+     *
+     * @param records the gates to encode
+     * @return buffer holding the whole file, positioned at the start
+     */
+    static ByteBuffer encode(List<GateRecord> records) {
+        NameTable worlds = new NameTable(true);
+        NameTable shapes = new NameTable(false);
+        NameTable networks = new NameTable(false);
+        Map<String, Integer> gateIndexes = new HashMap<>();
+        byte[][] names = new byte[records.size()][];
+        int namesLength = 0;
+        for (int i = 0; i < records.size(); i++) {
+            GateRecord record = records.get(i);
+            worlds.add(record.getWorldName(), record.getWorldId());
+            shapes.add(record.getShapeName());
+            networks.add(record.getNetwork());
+            gateIndexes.put(GateNameRegistry.normalise(record.getName()), i);
+            names[i] = record.getName().getBytes(StandardCharsets.UTF_8);
+            namesLength += names[i].length;
+        }
+
+        int size = HEADER_SIZE + worlds.length + shapes.length + networks.length + records.size() * RECORD_SIZE
+                + namesLength + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort(FORMAT_VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(worlds.entries.size());
+        buffer.putInt(records.size());
+        buffer.putInt(namesLength);
+        buffer.putInt(shapes.entries.size());
+        buffer.putInt(networks.entries.size());
+        worlds.write(buffer);
+        shapes.write(buffer);
+        networks.write(buffer);
+
+        int nameOffset = 0;
+        for (int i = 0; i < records.size(); i++) {
+            GateRecord record = records.get(i);
+            Integer destinationIndex = record.getDestinationName() == null
+                    ? null : gateIndexes.get(GateNameRegistry.normalise(record.getDestinationName()));
+            buffer.putShort((short) worlds.indexOf(record.getWorldName(), record.getWorldId()));
+            buffer.put((byte) record.getDirection().ordinal());
+            buffer.put((byte) (record.isPortalActive() ? FLAG_PORTAL_ACTIVE : 0));
+            buffer.putInt(record.getX());
+            buffer.putInt(record.getY());
+            buffer.putInt(record.getZ());
+            buffer.putInt(nameOffset);
+            buffer.putShort((short) names[i].length);
+            buffer.putShort((short) record.getCursorIndex());
+            buffer.putInt(record.getGateListWindowIndex());
+            buffer.putInt(destinationIndex == null ? -1 : destinationIndex);
+            buffer.putShort((short) shapes.indexOf(record.getShapeName()));
+            buffer.putShort((short) networks.indexOf(record.getNetwork()));
+            nameOffset += names[i].length;
+        }
+        for (byte[] name : names) {
+            buffer.put(name);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Replace the data file with the given gates. The data is written to a temporary file, synced, then renamed over
+     * the old file, so the file is never left half written
+     *
+     * @param file    the data file
+     * @param records the gates to write
+     * @throws IOException if the file could not be written
+     */
+    public static void write(File file, List<GateRecord> records) throws IOException {
+        ByteBuffer buffer = encode(records);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
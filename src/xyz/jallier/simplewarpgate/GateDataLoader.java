@@ -0,0 +1,291 @@
+package xyz.jallier.simplewarpgate;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes the gate data file on a pool of worker threads. Bad records are written to a quarantine file instead of
+ * stopping the load, and only records that passed validation are returned. The quarantine file keeps the whole record:
+ * its text form if it decoded, or its raw bytes if it did not, so a gate can be restored by hand
+ */
+public class GateDataLoader {
+    /**
+     * Number of text lines handed to a worker at once
+     */
+    private static final int LINES_PER_BATCH = 4096;
+    /**
+     * Number of binary records handed to a worker at once
+     */
+    private static final int RECORDS_PER_BATCH = 8192;
+
+    private final File quarantineFile;
+    /**
+     * Rejected records waiting to be written to the quarantine file
+     */
+    private final List<String> rejected;
+
+    /**
+     * Result of decoding one batch of records
+     */
+    private static class Batch {
+        private final List<GateRecord> records = new ArrayList<>();
+        private final List<String> rejected = new ArrayList<>();
+        private int read;
+    }
+
+    /**
+     * Construct a new loader
+     *
+     * @param quarantineFile file to append rejected records to
+     */
+    public GateDataLoader(File quarantineFile) {
+        this.quarantineFile = quarantineFile;
+        rejected = new ArrayList<>();
+    }
+
+    /**
+     * Decode and validate every record in the data file
+     *
+     * @param dataFile the data file
+     * @param report   the report to add counts and timings to
+     * @return the valid records, in file order
+     * @throws IOException if the file could not be read at all
+     */
+    public List<GateRecord> load(File dataFile, LoadReport report) throws IOException {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "SimpleWarpGate-Loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Batch>> batches;
+            report.startPhase("decode");
+            if (GateDataFile.isBinary(dataFile)) {
+                batches = submitBinary(dataFile, pool, report);
+            } else {
+                batches = submitText(dataFile, pool);
+            }
+            List<GateRecord> records = new ArrayList<>();
+            for (Future<Batch> future : batches) {
+                Batch batch = future.get();
+                records.addAll(batch.records);
+                rejected.addAll(batch.rejected);
+                report.addRead(batch.read);
+                report.addRejected(batch.rejected.size());
+            }
+            report.endPhase();
+            return records;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading gates", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Gate decoding failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stream the text format, handing batches of lines to the workers while the next batch is read
+     *
+     * @param dataFile the data file
+     * @param pool     the worker pool
+     * @return the batch results, in file order
+     * @throws IOException if the file could not be read
+     */
+    private List<Future<Batch>> submitText(File dataFile, ExecutorService pool) throws IOException {
+        List<Future<Batch>> batches = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(dataFile), StandardCharsets.UTF_8))) {
+            List<String> lines = new ArrayList<>(LINES_PER_BATCH);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == LINES_PER_BATCH) {
+                    batches.add(submitLines(pool, lines));
+                    lines = new ArrayList<>(LINES_PER_BATCH);
+                }
+            }
+            if (!lines.isEmpty()) {
+                batches.add(submitLines(pool, lines));
+            }
+        }
+        return batches;
+    }
+
+    private Future<Batch> submitLines(ExecutorService pool, List<String> lines) {
+        return pool.submit(() -> {
+            Batch batch = new Batch();
+            for (String line : lines) {
+                batch.read++;
+                try {
+                    accept(batch, GateRecord.parse(line), line);
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                    batch.rejected.add(e.getMessage() + "\t" + line);
+                }
+            }
+            return batch;
+        });
+    }
+
+    /**
+     * Read the binary format into memory and decode slices of it on the workers. Names are decoded first, since
+     * destinations refer to other records by index
+     *
+     * @param dataFile the data file
+     * @param pool     the worker pool
+     * @param report   the report, used to time the name pass
+     * @return the batch results, in file order
+     * @throws IOException if the file header could not be read
+     */
+    private List<Future<Batch>> submitBinary(File dataFile, ExecutorService pool, LoadReport report)
+            throws IOException, InterruptedException, ExecutionException {
+        ByteBuffer buffer = GateDataFile.readFully(dataFile);
+        if (!GateDataFile.checksumMatches(buffer)) {
+            // Keep going; each record is still validated on its own
+            rejected.add("Data file checksum does not match; loading the records that still decode\t"
+                    + dataFile.getName());
+        }
+        GateDataFile.Layout layout = GateDataFile.readLayout(buffer);
+        int gateCount = layout.getGateCount();
+
+        String[] names = new String[gateCount];
+        List<Future<?>> nameBatches = new ArrayList<>();
+        for (int start = 0; start < gateCount; start += RECORDS_PER_BATCH) {
+            int from = start;
+            int to = Math.min(gateCount, start + RECORDS_PER_BATCH);
+            nameBatches.add(pool.submit(() -> {
+                ByteBuffer reader = buffer.duplicate();
+                byte[] scratch = new byte[0xFFFF];
+                for (int i = from; i < to; i++) {
+                    try {
+                        names[i] = GateDataFile.decodeName(reader, layout, i, scratch);
+                    } catch (IllegalArgumentException e) {
+                        names[i] = null;
+                    }
+                }
+            }));
+        }
+        for (Future<?> nameBatch : nameBatches) {
+            nameBatch.get();
+        }
+
+        List<Future<Batch>> batches = new ArrayList<>();
+        for (int start = 0; start < gateCount; start += RECORDS_PER_BATCH) {
+            int from = start;
+            int to = Math.min(gateCount, start + RECORDS_PER_BATCH);
+            batches.add(pool.submit(() -> {
+                Batch batch = new Batch();
+                for (int i = from; i < to; i++) {
+                    batch.read++;
+                    try {
+                        GateRecord record = GateDataFile.decodeRecord(buffer, layout, i, names);
+                        accept(batch, record, record.serialize());
+                    } catch (IllegalArgumentException e) {
+                        batch.rejected.add(e.getMessage() + "\trecord " + i + " " + (names[i] == null ? "" : names[i])
+                                + "\t" + GateDataFile.encodeRawRecord(buffer, layout, i));
+                    }
+                }
+                return batch;
+            }));
+        }
+        return batches;
+    }
+
+    /**
+     * Validate a decoded record and add it to the batch, or reject it
+     *
+     * @param batch  the batch
+     * @param record the record
+     * @param source the original line or serialized record, for the quarantine file
+     */
+    private void accept(Batch batch, GateRecord record, String source) {
+        String problem = validate(record);
+        if (problem == null) {
+            batch.records.add(record);
+        } else {
+            batch.rejected.add(problem + "\t" + source);
+        }
+    }
+
+    /**
+     * Check a record can be turned into a gate. A shape that is not configured is not a problem here: the gate is kept
+     * until the shape is configured again, like a gate in a world that is not loaded
+     *
+     * @param record the record
+     * @return a description of the problem, or null if the record is valid
+     */
+    public String validate(GateRecord record) {
+        if (record.getName().trim().isEmpty()) {
+            return "Gate has no name";
+        }
+        switch (record.getDirection()) {
+            case NORTH:
+            case SOUTH:
+            case EAST:
+            case WEST:
+                break;
+            default:
+                return "Direction " + record.getDirection() + " is not horizontal";
+        }
+        return null;
+    }
+
+    /**
+     * Add a rejected record found outside the decoder, such as while replaying the journal or creating the gates
+     *
+     * @param reason why the record was rejected
+     * @param source the record
+     */
+    public void reject(String reason, String source) {
+        rejected.add(reason + "\t" + source);
+    }
+
+    /**
+     * Check if any record has been rejected
+     *
+     * @return if anything was rejected
+     */
+    public boolean hasRejected() {
+        return !rejected.isEmpty();
+    }
+
+    /**
+     * Append every rejected record to the quarantine file
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void writeQuarantine() throws IOException {
+        if (rejected.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(quarantineFile, true), StandardCharsets.UTF_8)) {
+            writer.write("# Rejected on " + new Date() + "\n");
+            for (String line : rejected) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * An event about one gate. Called on the thread that made the change, which on a region threaded server may not be
+ * the main thread, so such events are asynchronous there
+ */
+public abstract class GateEvent extends Event {
+    private final GateInfo gate;
+
+    /**
+     * Construct a new event
+     *
+     * @param gate the gate the event is about
+     */
+    GateEvent(Gate gate) {
+        super(!Bukkit.isPrimaryThread());
+        this.gate = GateInfo.of(gate);
+    }
+
+    /**
+     * Check if anything is listening for an event, so it only needs to be made when something is
+     *
+     * @param handlers the handlers of the event
+     * @return if the event has listeners
+     */
+    static boolean hasListeners(HandlerList handlers) {
+        return handlers.getRegisteredListeners().length > 0;
+    }
+
+    /**
+     * Get the gate the event is about
+     *
+     * @return a copy of the gate taken when the event was made
+     */
+    public GateInfo getGate() {
+        return gate;
+    }
+}
@@ -0,0 +1,16 @@
+package xyz.jallier.simplewarpgate;
+
+/**
+ * Types of event kept by the flight recorder
+ */
+public enum GateEventType {
+    GATE_CREATED,
+    GATE_DESTROYED,
+    GATE_PLACED,
+    DESTINATION_SELECTED,
+    PORTAL_ACTIVATED,
+    PORTAL_DEACTIVATED,
+    SIGN_RENDERED,
+    TELEPORT,
+    TELEPORT_QUEUED
+}
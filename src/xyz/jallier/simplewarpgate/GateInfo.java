@@ -0,0 +1,137 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+
+import java.util.UUID;
+
+/**
+ * What other plugins can see of a gate: where it is, its name and network, and where its portal leads. An immutable
+ * copy taken at one moment, so it can be kept and passed between threads, and changing the gate goes through the
+ * plugin rather than through this
+ */
+public final class GateInfo {
+    private final String name;
+    private final String network;
+    private final UUID worldId;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final BlockFace direction;
+    private final String destinationName;
+
+    private GateInfo(Gate gate) {
+        GateKey key = gate.getKey();
+        name = gate.getName();
+        network = gate.getNetwork();
+        worldId = key.getWorldId();
+        x = key.getX();
+        y = key.getY();
+        z = key.getZ();
+        direction = key.getDirection();
+        Gate destination = gate.getSelectedDestination();
+        destinationName = destination == null ? null : destination.getName();
+    }
+
+    /**
+     * Copy what is public about a gate
+     *
+     * @param gate the gate
+     * @return the copy, or null if the gate is null
+     */
+    static GateInfo of(Gate gate) {
+        return gate == null ? null : new GateInfo(gate);
+    }
+
+    /**
+     * Get the name
+     *
+     * @return gate name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the network the gate belongs to
+     *
+     * @return network name, or an empty string if it has none
+     */
+    public String getNetwork() {
+        return network;
+    }
+
+    /**
+     * Get the UUID of the world the gate is in
+     *
+     * @return world UUID
+     */
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    /**
+     * Look up the world the gate is in
+     *
+     * @return the world, or null if it is not loaded
+     */
+    public World getWorld() {
+        return Bukkit.getWorld(worldId);
+    }
+
+    /**
+     * Get the x coordinate of the start block, the block the sign is placed against
+     *
+     * @return block x coordinate
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * Get the y coordinate of the start block
+     *
+     * @return block y coordinate
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Get the z coordinate of the start block
+     *
+     * @return block z coordinate
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Get the direction of the gate
+     *
+     * @return direction
+     */
+    public BlockFace getDirection() {
+        return direction;
+    }
+
+    /**
+     * Get the name of the destination selected on the gate's sign when this copy was taken
+     *
+     * @return destination name, or null if none was selected
+     */
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    /**
+     * Create a string representation of the gate, for logging
+     *
+     * @return the name and position
+     */
+    @Override
+    public String toString() {
+        return name + "::" + worldId + "::" + x + "," + y + "," + z + "::" + direction.name();
+    }
+}
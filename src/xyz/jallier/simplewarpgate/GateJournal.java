@@ -0,0 +1,356 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Append only journal of gate changes. Records are written and synced to disk by a background thread, so a crash
+ * only loses changes from the last moment. Every so often the journal is folded into the snapshot file.
+ * <p>
+ * If writing fails, such as when the disk is full, the writer keeps the records in memory and tries again with a
+ * growing delay. Anything half written is cut off the end of the journal before it tries again
+ */
+public class GateJournal {
+    private static final String PUT = "PUT";
+    private static final String REMOVE = "REMOVE";
+    /**
+     * Delay before the first retry after a failed write
+     */
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    /**
+     * Longest delay between retries
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    /**
+     * Pending journal lines and compaction requests, in the order they were made
+     */
+    private final BlockingQueue<Object> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+    /**
+     * If the last write failed and the writer is waiting to try again
+     */
+    private volatile boolean failing;
+    /**
+     * The open journal, or null if it is not open. Only used by the writer thread
+     */
+    private FileOutputStream out;
+    /**
+     * Length of the journal that is known to be on disk. Only used by the writer thread
+     */
+    private long syncedLength;
+    /**
+     * Number of records appended since the last compaction was requested
+     */
+    private final AtomicInteger recordsSinceCompaction;
+
+    /**
+     * Request to replace the snapshot and empty the journal. Holds the snapshot as it was when the request was made
+     */
+    private static class Compaction {
+        private final List<GateRecord> records;
+
+        Compaction(List<GateRecord> records) {
+            this.records = records;
+        }
+    }
+
+    /**
+     * Marker used to wake the writer thread when it is stopped
+     */
+    private static final Object STOP = new Object();
+
+    /**
+     * Construct a new journal
+     *
+     * @param snapshotFile the snapshot data file
+     * @param journalFile  the journal file
+     */
+    public GateJournal(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        queue = new LinkedBlockingQueue<>();
+        running = false;
+        failing = false;
+        recordsSinceCompaction = new AtomicInteger();
+    }
+
+    /**
+     * Start the background writer thread
+     */
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "SimpleWarpGate-Journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Record the current state of a gate
+     *
+     * @param record the gate state
+     */
+    public void appendPut(GateRecord record) {
+        append(PUT + "|" + record.serialize());
+    }
+
+    /**
+     * Record that a gate was removed
+     *
+     * @param name the gate name
+     */
+    public void appendRemove(String name) {
+        append(REMOVE + "|" + name);
+    }
+
+    private synchronized void append(String payload) {
+        if (!running) {
+            return;
+        }
+        queue.add(checksum(payload) + "|" + payload);
+        recordsSinceCompaction.incrementAndGet();
+    }
+
+    /**
+     * Get the number of records appended since the last compaction
+     *
+     * @return number of records
+     */
+    public int getRecordsSinceCompaction() {
+        return recordsSinceCompaction.get();
+    }
+
+    /**
+     * Ask the writer thread to replace the snapshot with the current gates and empty the journal. The snapshot is made
+     * while appends are held off, so every change is either in the snapshot or appended after the compaction, and none
+     * are lost when the journal is emptied
+     *
+     * @param snapshot makes a record of the current state of every gate
+     */
+    public synchronized void compact(Supplier<List<GateRecord>> snapshot) {
+        if (!running) {
+            return;
+        }
+        queue.add(new Compaction(snapshot.get()));
+        recordsSinceCompaction.set(0);
+    }
+
+    /**
+     * Stop the writer thread once it has written everything already queued. If writing is failing the writer gives up
+     * instead, and the caller is expected to write the snapshot in full
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        queue.add(STOP);
+        if (failing) {
+            writerThread.interrupt(); // Stop waiting to retry
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write queued records in groups. Everything queued while the previous group was syncing is written and synced
+     * together, so a burst of changes only costs one sync. A group that fails is kept and tried again
+     */
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        long retryDelay = RETRY_DELAY_MILLIS;
+        try {
+            syncedLength = journalFile.length();
+            boolean stopped = false;
+            while (!stopped) {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                }
+                queue.drainTo(batch);
+                try {
+                    stopped = writeBatch(batch);
+                    if (failing) {
+                        failing = false;
+                        Bukkit.getLogger().log(Level.INFO, "SimpleWarpGate journal writer recovered");
+                    }
+                    retryDelay = RETRY_DELAY_MILLIS;
+                } catch (IOException e) {
+                    closeStream();
+                    if (!running) {
+                        Bukkit.getLogger().log(Level.SEVERE, "SimpleWarpGate journal writer failed while stopping", e);
+                        return;
+                    }
+                    if (!failing) {
+                        failing = true;
+                        Bukkit.getLogger().log(Level.SEVERE, "SimpleWarpGate journal writer failed; keeping changes "
+                                + "in memory and trying again", e);
+                    }
+                    Thread.sleep(retryDelay);
+                    retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            closeStream();
+        }
+    }
+
+    /**
+     * Write a group of queued items. Items are removed from the front of the group once they are on disk, so after a
+     * failure the group holds what is still to be written
+     *
+     * @param batch the queued items, in order
+     * @return if the stop marker was reached
+     * @throws IOException if writing failed
+     */
+    private boolean writeBatch(List<Object> batch) throws IOException {
+        while (!batch.isEmpty()) {
+            Object item = batch.get(0);
+            if (item == STOP) {
+                batch.clear();
+                return true;
+            }
+            if (item instanceof Compaction) {
+                closeStream();
+                GateDataFile.write(snapshotFile, ((Compaction) item).records);
+                out = new FileOutputStream(journalFile, false);
+                out.getChannel().force(false);
+                syncedLength = 0;
+                batch.remove(0);
+                continue;
+            }
+            // Every line up to the next compaction or stop marker is synced together
+            openStream();
+            int count = 0;
+            while (count < batch.size() && batch.get(count) instanceof String) {
+                out.write(((String) batch.get(count) + "\n").getBytes(StandardCharsets.UTF_8));
+                count++;
+            }
+            out.getChannel().force(false);
+            syncedLength = out.getChannel().size();
+            batch.subList(0, count).clear();
+        }
+        return false;
+    }
+
+    /**
+     * Open the journal for appending if it is not open, cutting off anything written after the last sync
+     *
+     * @throws IOException if the journal could not be opened
+     */
+    private void openStream() throws IOException {
+        if (out != null) {
+            return;
+        }
+        out = new FileOutputStream(journalFile, true);
+        if (out.getChannel().size() > syncedLength) {
+            // Left by a failed write; the lines are written again
+            out.getChannel().truncate(syncedLength);
+        }
+    }
+
+    private void closeStream() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not close the SimpleWarpGate journal", e);
+        }
+        out = null;
+    }
+
+    /**
+     * Delete the journal, once its records are in the snapshot
+     */
+    public void clear() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not delete " + journalFile);
+        }
+    }
+
+    /**
+     * Apply the records in the journal on top of the records loaded from the snapshot. Reading stops at the first
+     * damaged line, which can only be the last line written before a crash. A record that is intact but cannot be
+     * parsed is rejected on its own, and the records after it are still applied
+     *
+     * @param records the snapshot records, keyed by normalised gate name
+     * @param loader  the loader to reject records to
+     * @return number of journal records applied
+     */
+    public int replay(Map<String, GateRecord> records, GateDataLoader loader) {
+        int applied = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.indexOf('|');
+                if (split < 0 || !line.substring(0, split).equals(checksum(line.substring(split + 1)))) {
+                    Bukkit.getLogger().log(Level.WARNING, "Ignoring damaged SimpleWarpGate journal record: " + line);
+                    break;
+                }
+                String payload = line.substring(split + 1);
+                int opSplit = payload.indexOf('|');
+                if (opSplit < 0) {
+                    loader.reject("Journal record has no operation", line);
+                    continue;
+                }
+                String op = payload.substring(0, opSplit);
+                String data = payload.substring(opSplit + 1);
+                if (op.equals(PUT)) {
+                    try {
+                        GateRecord record = GateRecord.parse(data);
+                        records.put(GateNameRegistry.normalise(record.getName()), record);
+                    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                        loader.reject("Journal record could not be parsed: " + e.getMessage(), line);
+                        continue;
+                    }
+                } else if (op.equals(REMOVE)) {
+                    records.remove(GateNameRegistry.normalise(data));
+                } else {
+                    loader.reject("Unknown journal operation " + op, line);
+                    continue;
+                }
+                applied++;
+            }
+        } catch (FileNotFoundException e) {
+            return 0;
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not fully read the SimpleWarpGate journal", e);
+        }
+        return applied;
+    }
+
+    private static String checksum(String payload) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return Long.toHexString(crc.getValue());
+    }
+}
@@ -0,0 +1,163 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+import java.util.UUID;
+
+/**
+ * Where a gate is: the id of its world, the packed position of its start block and the direction it faces. Holds no
+ * reference to the world, so a gate never keeps an unloaded world in memory; blocks are looked up from the world when
+ * needed. Two keys are equal if they describe the same place
+ */
+public final class GateKey {
+    private static final BlockFace[] DIRECTIONS = BlockFace.values();
+
+    /**
+     * Packed position of the start block, see {@link BlockKey}
+     */
+    private final long position;
+    /**
+     * World id from {@link WorldIndex}
+     */
+    private final int worldIndex;
+    /**
+     * Ordinal of the direction
+     */
+    private final byte direction;
+
+    /**
+     * Construct a new key
+     *
+     * @param worldIndex id of the world from {@link WorldIndex}
+     * @param position   packed position of the start block
+     * @param direction  direction of the gate
+     */
+    public GateKey(int worldIndex, long position, BlockFace direction) {
+        this.worldIndex = worldIndex;
+        this.position = position;
+        this.direction = (byte) direction.ordinal();
+    }
+
+    /**
+     * Make the key of a gate from its start block
+     *
+     * @param startBlock the block the sign is placed against
+     * @param direction  direction of the gate
+     * @return the key
+     */
+    public static GateKey of(Block startBlock, BlockFace direction) {
+        return new GateKey(WorldIndex.getId(startBlock.getWorld()), BlockKey.pack(startBlock), direction);
+    }
+
+    /**
+     * Get the id of the world
+     *
+     * @return world id from {@link WorldIndex}
+     */
+    public int getWorldIndex() {
+        return worldIndex;
+    }
+
+    /**
+     * Get the UUID of the world
+     *
+     * @return world UUID
+     */
+    public UUID getWorldId() {
+        return WorldIndex.getWorldId(worldIndex);
+    }
+
+    /**
+     * Look up the world
+     *
+     * @return the world, or null if it is not loaded
+     */
+    public World getWorld() {
+        return Bukkit.getWorld(getWorldId());
+    }
+
+    /**
+     * Get the packed position of the start block
+     *
+     * @return packed position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the x coordinate of the start block
+     *
+     * @return block x coordinate
+     */
+    public int getX() {
+        return BlockKey.getX(position);
+    }
+
+    /**
+     * Get the y coordinate of the start block
+     *
+     * @return block y coordinate
+     */
+    public int getY() {
+        return BlockKey.getY(position);
+    }
+
+    /**
+     * Get the z coordinate of the start block
+     *
+     * @return block z coordinate
+     */
+    public int getZ() {
+        return BlockKey.getZ(position);
+    }
+
+    /**
+     * Get the direction of the gate
+     *
+     * @return direction
+     */
+    public BlockFace getDirection() {
+        return DIRECTIONS[direction];
+    }
+
+    /**
+     * Look up the start block
+     *
+     * @return the block, or null if the world is not loaded
+     */
+    public Block getBlock() {
+        World world = getWorld();
+        return world == null ? null : world.getBlockAt(getX(), getY(), getZ());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof GateKey)) {
+            return false;
+        }
+        GateKey key = (GateKey) other;
+        return position == key.position && worldIndex == key.worldIndex && direction == key.direction;
+    }
+
+    @Override
+    public int hashCode() {
+        return (Long.hashCode(position) * 31 + worldIndex) * 31 + direction;
+    }
+
+    /**
+     * Create a string representation of the key, for logging
+     *
+     * @return the world id, coordinates and direction
+     */
+    @Override
+    public String toString() {
+        return worldIndex + "::" + getX() + "," + getY() + "," + getZ() + "::" + getDirection().name();
+    }
+}
@@ -8,61 +8,162 @@ import org.bukkit.block.BlockFace;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 
 /**
- * Manage the state of all the gates in the worlds
+ * Manage the state of all the gates in the worlds. Safe to use from any thread: the gates snapshot, names and networks
+ * are read without locking, and the per world indexes are read under a shared lock and changed under an exclusive one
  */
 public class GateManager {
-    private static GateManager gateManager = null;
-    private final List<Gate> gates;
+    /**
+     * Fewest journal records worth compacting. Below this, replaying the journal at startup costs less than rewriting
+     * the snapshot
+     */
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 256;
+
+    private static final GateManager gateManager = new GateManager();
+    /**
+     * Immutable snapshot of the registered gates. Replaced, never modified, whenever a gate is added or removed
+     */
+    private volatile List<Gate> gates;
+    /**
+     * Incremented every time the gates snapshot is replaced
+     */
+    private volatile long version;
+    private final GateNameRegistry nameRegistry;
+    /**
+     * The gates of each network sorted by name, keyed by normalised network name. Each list is replaced, never
+     * modified, when a gate joins or leaves its network
+     */
+    private final Map<String, List<Gate>> networks;
+    private final GateSpatialIndex spatialIndex;
+    /**
+     * The gates of each loaded world, by world id. Null for worlds without gates and worlds that have unloaded
+     */
+    private final List<WorldShard> shards;
+    /**
+     * Records of the gates in worlds that are not loaded, or with a shape that is not configured, keyed by normalised
+     * gate name. Their names stay taken, and they are saved with the other gates
+     */
+    private final Map<String, GateRecord> dormant;
+    /**
+     * Guards the spatial index, the shards and the dormant records, and orders changes to the other collections
+     */
+    private final ReadWriteLock lock;
     private final String dataFilename = "SimpleWarpGate.dat";
+    private final String journalFilename = "SimpleWarpGate.journal";
+    private final String quarantineFilename = "SimpleWarpGate.rejected";
+    /**
+     * Journal of changes since the last snapshot. Null until started
+     */
+    private GateJournal journal;
 
     private GateManager() {
-        gates = new ArrayList<>();
+        gates = Collections.emptyList();
+        version = 0;
+        nameRegistry = new GateNameRegistry();
+        networks = new ConcurrentHashMap<>();
+        spatialIndex = new GateSpatialIndex();
+        shards = new ArrayList<>();
+        dormant = new LinkedHashMap<>();
+        lock = new ReentrantReadWriteLock();
     }
 
     /**
-     * Create a new instance of the manager, or return the existing one if already created
+     * Get the manager. It is created when the class loads, so every thread sees the same one
      *
      * @return the GateManager instance
      */
     public static GateManager getInstance() {
-        if (gateManager == null) {
-            gateManager = new GateManager();
-        }
         return gateManager;
     }
 
     /**
-     * Prevent a gate from having the same name as one already in the list
+     * Prevent a gate from having the same name as one already in the list. Names are not case sensitive
      *
      * @param name name to check
      * @return if the name is unique
      */
-    private boolean validateGateName(String name) {
-        for (Gate gate : gates) {
-            if (gate.getName().equals(name)) {
-                return false;
-            }
+    public boolean validateGateName(String name) {
+        if (nameRegistry.contains(name)) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            return !dormant.containsKey(GateNameRegistry.normalise(name));
+        } finally {
+            lock.readLock().unlock();
         }
-        return true;
+    }
+
+    /**
+     * Get a gate by name
+     *
+     * @param name the gate name, in any case
+     * @return the gate, or null if there is no gate with that name
+     */
+    public Gate getGate(String name) {
+        return nameRegistry.get(name);
     }
 
     /**
      * Add a new gate to the global list
      *
      * @param gate the gate to add
-     * @return false if gate already exists
+     * @return false if gate already exists, or a gate in an unloaded world has the name
      */
     public boolean addNewGate(Gate gate) {
-        if (!gates.contains(gate) && validateGateName(gate.getName())) {
-            gates.add(gate);
+        return register(gate, true);
+    }
+
+    /**
+     * Add a gate loaded from file to the global list, without journaling it
+     *
+     * @param gate the gate to add
+     * @return false if gate already exists, or a gate in an unloaded world has the name
+     */
+    public boolean addLoadedGate(Gate gate) {
+        return register(gate, false);
+    }
+
+    /**
+     * Add a gate to the list and indexes
+     *
+     * @param gate      the gate to add
+     * @param journaled if the gate should be journaled. Done under the write lock, so a removal of the gate can only
+     *                  be journaled after it
+     * @return false if gate already exists, or a gate in an unloaded world has the name
+     */
+    private boolean register(Gate gate, boolean journaled) {
+        lock.writeLock().lock();
+        try {
+            if (dormant.containsKey(gate.getNameKey()) || !nameRegistry.add(gate)) {
+                return false;
+            }
+            List<Gate> newGates = new ArrayList<>(gates.size() + 1);
+            newGates.addAll(gates);
+            newGates.add(gate);
+            addToNetwork(gate);
+            publish(newGates);
+            spatialIndex.add(gate);
+            getOrCreateShard(gate).add(gate);
+            if (journaled && journal != null) {
+                journal.appendPut(GateRecord.fromGate(gate));
+            }
             return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -72,112 +173,585 @@ public class GateManager {
      * @return success of the removal
      */
     public boolean removeGate(Gate gate) {
-        if (gates.size() != 0) {
-            gates.remove(gate);
+        lock.writeLock().lock();
+        try {
+            if (!nameRegistry.remove(gate)) {
+                return false;
+            }
+            List<Gate> newGates = new ArrayList<>(gates);
+            newGates.remove(gate);
+            removeFromNetwork(gate);
+            publish(newGates);
+            if (journal != null) {
+                journal.appendRemove(gate.getName());
+            }
+            spatialIndex.remove(gate);
+            WorldShard shard = getShard(gate.getKey().getWorldIndex());
+            if (shard != null) {
+                shard.remove(gate);
+            }
             return true;
+        } finally {
+            lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
-     * Return a new list (to prevent modifying the managers list state) from the active gates currently stored
+     * Replace the gates snapshot and bump the version. Called with the write lock held, after the networks have been
+     * changed
+     *
+     * @param newGates the new list of gates. Must not be modified afterwards
+     */
+    private void publish(List<Gate> newGates) {
+        gates = Collections.unmodifiableList(newGates);
+        version++;
+    }
+
+    /**
+     * Get the version of the gates snapshot. This changes every time a gate is added or removed
+     *
+     * @return the snapshot version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the shard of a loaded world
+     *
+     * @param worldId the world id
+     * @return the shard, or null if the world has no gates or is not loaded
+     */
+    private WorldShard getShard(int worldId) {
+        return worldId < shards.size() ? shards.get(worldId) : null;
+    }
+
+    /**
+     * Get the shard of a gate's world, creating it if this is the first gate in the world
+     *
+     * @param gate the gate
+     * @return the shard
+     */
+    private WorldShard getOrCreateShard(Gate gate) {
+        int worldId = gate.getKey().getWorldIndex();
+        while (shards.size() <= worldId) {
+            shards.add(null);
+        }
+        WorldShard shard = shards.get(worldId);
+        if (shard == null) {
+            shard = new WorldShard(gate.getKey().getWorldId());
+            shards.set(worldId, shard);
+        }
+        return shard;
+    }
+
+    /**
+     * Update gates after a block has been placed, removed or changed. Gates whose arrival area includes the block work
+     * out their arrival location again before the next arrival
+     *
+     * @param block the changed block
+     */
+    public void handleBlockChanged(Block block) {
+        lock.readLock().lock();
+        try {
+            WorldShard shard = getShard(WorldIndex.getId(block.getWorld()));
+            if (shard == null) {
+                return;
+            }
+            Gate[] gates = shard.getArrivalGates(BlockKey.pack(block.getX(), 0, block.getZ()));
+            if (gates == null) {
+                return;
+            }
+            int y = block.getY();
+            for (Gate gate : gates) {
+                if (gate.isInArrivalHeight(y)) {
+                    gate.invalidateArrivalLocation();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Update the gate owning a block after that block has been destroyed or moved. If this breaks the gate structure
+     * the gate is torn down and removed
+     *
+     * @param block the destroyed block
+     * @return the gate that was torn down, or null if no gate was broken
+     */
+    public Gate handleBlockDestroyed(Block block) {
+        handleBlockChanged(block);
+        Gate gate = getGateAt(block);
+        if (gate == null) {
+            return null;
+        }
+        if (!gate.markBlockDestroyed(BlockKey.pack(block)) || gate.isIntact()) {
+            return null;
+        }
+        if (!removeGate(gate)) {
+            return null; // Already removed by another thread
+        }
+        gate.tearDown();
+        Metrics.GATES_DESTROYED.increment();
+        FlightRecorder.getInstance().record(GateEventType.GATE_DESTROYED, gate, null, 0);
+        GateRemovedEvent.call(gate, GateRemovedEvent.Reason.DESTROYED);
+        return gate;
+    }
+
+    /**
+     * Get the gate that owns a block. This is any of the sign, button, frame or middle blocks
+     *
+     * @param block the block to check
+     * @return the owning gate, or null if the block does not belong to a gate
+     */
+    public Gate getGateAt(Block block) {
+        lock.readLock().lock();
+        try {
+            WorldShard shard = getShard(WorldIndex.getId(block.getWorld()));
+            return shard == null ? null : shard.getGateAt(BlockKey.pack(block));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the gates with a start block within the chunks around a location. Only gates in the chunks the radius
+     * overlaps are returned, so callers still need to check the exact bounds
+     *
+     * @param location the location to search around
+     * @param radius   the radius in blocks
+     * @return list of nearby gates, not to be modified
+     */
+    public List<Gate> getGatesNear(Location location, int radius) {
+        lock.readLock().lock();
+        try {
+            return spatialIndex.getGatesNear(location.getWorld(), location.getBlockX(), location.getBlockZ(), radius);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the current immutable snapshot of the active gates. The snapshot is not copied, and does not change if
+     * gates are added or removed later
      *
      * @return list of gates
      */
     public List<Gate> getActiveGates() {
-        return new ArrayList<>(gates);
+        return gates;
     }
 
     /**
-     * Return a new list (to prevent modifying the managers list state) from the active gates currently stored
-     * Also check to see if the self gate should be removed from the returned list
+     * Return the current immutable snapshot of the active gates.
+     * If the self gate should be removed, the destinations of that gate are returned instead: the other gates in its
+     * network, sorted by name. The list without the self gate is cached on the gate until the snapshot changes
      *
      * @param removeSelf if the self gate should be removed from the returned list
      * @param self       the gate to be removed from the list
      * @return list of active gates
      */
     public List<Gate> getActiveGates(boolean removeSelf, Gate self) {
-        List<Gate> gates = new ArrayList<>(this.gates);
-        if (removeSelf) {
-            gates.remove(self);
+        if (!removeSelf || self == null) {
+            return gates;
         }
-        return gates;
+        // Read the version first. Networks change before the version is bumped, so a list newer than the version is
+        // cached under the older version and built again on the next call, never the other way round
+        long currentVersion = version;
+        return self.getDestinations(getNetworkGates(self.getNetworkKey()), currentVersion);
     }
 
     /**
-     * Load the plugin state from disk, and initialize it
+     * Get the gates in a network, sorted by name
+     *
+     * @param networkKey the normalised network name
+     * @return list of gates, not to be modified
      */
-    public void loadStateFromFile() {
-        Scanner scanner = null;
-        try {
-            FileInputStream fileInputStream = new FileInputStream(dataFilename);
-            scanner = new Scanner(fileInputStream);
+    public List<Gate> getNetworkGates(String networkKey) {
+        List<Gate> networkGates = networks.get(networkKey);
+        return networkGates == null ? Collections.emptyList() : networkGates;
+    }
 
-            while (scanner.hasNextLine()) {
-                String info = scanner.nextLine();
+    /**
+     * Replace the list of a gate's network with a copy that has the gate in name order. Called with the write lock held
+     *
+     * @param gate the gate joining its network
+     */
+    private void addToNetwork(Gate gate) {
+        List<Gate> old = getNetworkGates(gate.getNetworkKey());
+        int index = Gate.lowerBound(old, gate.getNameKey());
+        List<Gate> networkGates = new ArrayList<>(old.size() + 1);
+        networkGates.addAll(old.subList(0, index));
+        networkGates.add(gate);
+        networkGates.addAll(old.subList(index, old.size()));
+        networks.put(gate.getNetworkKey(), Collections.unmodifiableList(networkGates));
+        SignRenderScheduler.getInstance().markNetworkChanged(gate.getNetworkKey());
+    }
 
-                String[] gateData = info.split("::");
-                String[] xyz = gateData[2].split(",");
-                String name = gateData[0];
-                Location location = unserializeLocation(gateData[1], xyz[0], xyz[1], xyz[2]);
-                Block startBlock = Bukkit.getWorld(gateData[1]).getBlockAt(location);
-                BlockFace direction = BlockFace.valueOf(gateData[3]);
+    /**
+     * Replace the list of a gate's network with a copy without the gate. Called with the write lock held
+     *
+     * @param gate the gate leaving its network
+     */
+    private void removeFromNetwork(Gate gate) {
+        List<Gate> old = getNetworkGates(gate.getNetworkKey());
+        if (old.size() <= 1) {
+            networks.remove(gate.getNetworkKey());
+            return;
+        }
+        List<Gate> networkGates = new ArrayList<>(old);
+        networkGates.remove(gate);
+        networks.put(gate.getNetworkKey(), Collections.unmodifiableList(networkGates));
+        SignRenderScheduler.getInstance().markNetworkChanged(gate.getNetworkKey());
+    }
 
-                Gate gate = Gate.createGate(startBlock, direction, name);
+    /**
+     * Record a change to the state of a gate in the journal
+     *
+     * @param gate the gate that changed
+     */
+    public void recordStateChange(Gate gate) {
+        if (journal == null) {
+            return;
+        }
+        // Checked and journaled under the lock, so a removal journaled under the write lock cannot come before this
+        lock.readLock().lock();
+        try {
+            if (gate.isRemoved() || nameRegistry.get(gate.getName()) != gate) {
+                return;
             }
-        } catch (FileNotFoundException e) {
-            Bukkit.getLogger().log(Level.INFO, "No SimpleWarpGate data file found, no gates to load");
+            journal.appendPut(GateRecord.fromGate(gate));
         } finally {
-            if (scanner != null) {
-                scanner.close();
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load the plugin state from disk, and initialize it. The snapshot is read first, then the journal is replayed on
+     * top of it. Gates in worlds that are not loaded are kept as records until their world loads, and gates with a
+     * shape that is not configured are kept as records until the shape is configured and the plugin restarts
+     */
+    public void loadStateFromFile() {
+        long start = System.nanoTime();
+        LoadReport report = new LoadReport();
+        GateDataLoader loader = new GateDataLoader(new File(quarantineFilename));
+
+        Map<String, GateRecord> records = new LinkedHashMap<>();
+        File dataFile = new File(dataFilename);
+        if (dataFile.exists()) {
+            try {
+                for (GateRecord record : loader.load(dataFile, report)) {
+                    records.put(GateNameRegistry.normalise(record.getName()), record);
+                }
+            } catch (IOException e) {
+                Bukkit.getLogger().log(Level.SEVERE, "Could not read the SimpleWarpGate data file", e);
             }
+        } else {
+            Bukkit.getLogger().log(Level.INFO, "No SimpleWarpGate data file found, no gates to load");
         }
 
-        // Once the gates are loaded, refresh their signs
-        for (Gate gate : gates) {
-            gate.setInitialSignState(gate.getSignBlock());
+        report.startPhase("journal");
+        GateJournal journal = new GateJournal(new File(dataFilename), new File(journalFilename));
+        int replayed = journal.replay(records, loader);
+        if (replayed > 0) {
+            Bukkit.getLogger().log(Level.INFO, "Replayed " + replayed + " SimpleWarpGate journal records");
         }
+
+        report.startPhase("register");
+        List<GateRecord> loadedWorldRecords = new ArrayList<>(records.size());
+        int unshaped = 0;
+        for (Map.Entry<String, GateRecord> entry : records.entrySet()) {
+            GateRecord record = entry.getValue();
+            // Journal records have not been through the decoder, so check them all here
+            String problem = loader.validate(record);
+            if (problem != null) {
+                loader.reject(problem, record.serialize());
+                report.addRejected(1);
+            } else if (GateShapes.get(record.getShapeName()) == null) {
+                dormant.put(entry.getKey(), record);
+                report.addAccepted(1);
+                unshaped++;
+            } else if (Bukkit.getWorld(record.getWorldName()) == null) {
+                dormant.put(entry.getKey(), record);
+                report.addAccepted(1);
+            } else {
+                loadedWorldRecords.add(record);
+            }
+        }
+        List<Gate> registered = registerRecords(loadedWorldRecords, loader);
+        report.addAccepted(registered.size());
+        report.addRejected(loadedWorldRecords.size() - registered.size());
+        report.endPhase();
+        for (Gate gate : registered) {
+            GateCreatedEvent.call(gate, GateCreatedEvent.Reason.LOADED);
+        }
+        // Signs are refreshed by the render scheduler once the gates are loaded
+        if (unshaped > 0) {
+            Bukkit.getLogger().log(Level.WARNING, "Keeping " + unshaped + " SimpleWarpGate gates whose shape is not "
+                    + "configured; they come back once their shape is in gate-shapes again");
+        }
+        try {
+            loader.writeQuarantine();
+            if (loader.hasRejected()) {
+                Bukkit.getLogger().log(Level.WARNING, "Some SimpleWarpGate records were rejected and kept in "
+                        + quarantineFilename + "; they are left out of the data file from now on");
+            }
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Could not write rejected gate records to " + quarantineFilename
+                    + "; they are lost once the data file is next written", e);
+        }
+        if (report.getRecordsRead() > 0 || report.getRecordsRejected() > 0) {
+            report.log(Bukkit.getLogger());
+        }
+        Metrics.LOAD.recordSince(start);
     }
 
     /**
-     * Create a new Location from its string representation
+     * Create the gates for records in loaded worlds and restore their selections, without journaling them. The gates
+     * are placed in the world once their chunks load
      *
-     * @param worldName name of the world for the location
-     * @param x         x coordinate
-     * @param y         y coordinate
-     * @param z         z coordinate
-     * @return The new Location
+     * @param records valid records, each in a loaded world
+     * @param loader  the loader to reject records to
+     * @return the gates created
      */
-    private Location unserializeLocation(String worldName, String x, String y, String z) {
-        World world = Bukkit.getWorld(worldName);
-        int intX = Integer.parseInt(x);
-        int intY = Integer.parseInt(y);
-        int intZ = Integer.parseInt(z);
-        return new Location(world, intX, intY, intZ);
+    private List<Gate> registerRecords(List<GateRecord> records, GateDataLoader loader) {
+        List<GateRecord> registered = new ArrayList<>(records.size());
+        List<Gate> created = new ArrayList<>(records.size());
+        for (GateRecord record : records) {
+            World world = Bukkit.getWorld(record.getWorldName());
+            if (record.getWorldId() != null && !record.getWorldId().equals(world.getUID())) {
+                // The world was deleted and made again under the same name, so the gate is gone. The record is kept
+                // in the quarantine file and left out of the gates and dormant records, so the next time the data
+                // file is written it is dropped. While loading that is the startup compaction, as there is no journal
+                // yet; once running, the removal is journaled so a crash before the next compaction cannot revive it
+                loader.reject("World was replaced", record.serialize());
+                dormant.remove(GateNameRegistry.normalise(record.getName()));
+                if (journal != null) {
+                    journal.appendRemove(record.getName());
+                }
+                continue;
+            }
+            GateKey key = new GateKey(WorldIndex.getId(world), BlockKey.pack(record.getX(), record.getY(),
+                    record.getZ()), record.getDirection());
+            GateShape shape = GateShapes.get(record.getShapeName());
+            if (Gate.loadGate(key, record.getName(), shape, record.getNetwork()) == null) {
+                loader.reject("Gate name is already taken", record.serialize());
+                continue;
+            }
+            registered.add(record);
+        }
+        // Destinations can only be restored once every gate exists
+        for (GateRecord record : registered) {
+            Gate gate = getGate(record.getName());
+            Gate destination = record.getDestinationName() == null ? null : getGate(record.getDestinationName());
+            gate.restoreState(destination, record.getCursorIndex(), record.getGateListWindowIndex(),
+                    record.isPortalActive());
+            // Only touch the world once the gate chunks are loaded
+            GateMaterialiser.getInstance().enqueue(gate);
+            created.add(gate);
+        }
+        return created;
     }
 
     /**
-     * Write the current state to file
+     * Create the gates of a world that has just loaded from their records
+     *
+     * @param world the world
      */
-    public void writeStateToFile() {
-        String newlineChar = System.getProperty("line.separator");
-        BufferedWriter writer = null;
+    public void loadWorld(World world) {
+        List<GateRecord> records = new ArrayList<>();
+        GateDataLoader loader = new GateDataLoader(new File(quarantineFilename));
+        List<Gate> registered;
+        // Held throughout, so no one else can take the names between leaving the dormant records and registering
+        lock.writeLock().lock();
         try {
-            writer = new BufferedWriter(new FileWriter(dataFilename));
-            for (Gate gate : gates) {
-                String output = gate.toString();
-                writer.write(output + newlineChar);
+            Iterator<GateRecord> iterator = dormant.values().iterator();
+            while (iterator.hasNext()) {
+                GateRecord record = iterator.next();
+                if (record.getWorldName().equals(world.getName()) && GateShapes.get(record.getShapeName()) != null) {
+                    records.add(record);
+                    iterator.remove();
+                }
             }
+            if (records.isEmpty()) {
+                return;
+            }
+            registered = registerRecords(records, loader);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            loader.writeQuarantine();
         } catch (IOException e) {
-            e.printStackTrace();
+            Bukkit.getLogger().log(Level.WARNING, "Could not write rejected gate records to " + quarantineFilename, e);
+        }
+        for (Gate gate : registered) {
+            GateCreatedEvent.call(gate, GateCreatedEvent.Reason.LOADED);
+        }
+        Bukkit.getLogger().log(Level.INFO, "Loaded " + registered.size() + " of " + records.size() + " gates in world "
+                + world.getName());
+    }
+
+    /**
+     * Let go of the gates in a world that is unloading. Each gate is kept as a record until the world loads again, so
+     * nothing is left holding on to the world. Gates elsewhere with one of them selected lose their selection
+     *
+     * @param world the world
+     */
+    public void unloadWorld(World world) {
+        List<Gate> unloaded;
+        List<Gate> remaining;
+        lock.writeLock().lock();
+        try {
+            int worldId = WorldIndex.getId(world);
+            WorldShard shard = getShard(worldId);
+            if (shard == null) {
+                return;
+            }
+            shards.set(worldId, null);
+            unloaded = shard.getGates();
+            Set<String> networkKeys = new HashSet<>();
+            for (Gate gate : unloaded) {
+                // Recorded before unloading, which clears the selection
+                dormant.put(gate.getNameKey(), GateRecord.fromGate(gate));
+                networkKeys.add(gate.getNetworkKey());
+                nameRegistry.remove(gate);
+                gate.unload();
+            }
+            for (String networkKey : networkKeys) {
+                List<Gate> networkGates = new ArrayList<>();
+                for (Gate gate : getNetworkGates(networkKey)) {
+                    if (!gate.isRemoved()) {
+                        networkGates.add(gate);
+                    }
+                }
+                if (networkGates.isEmpty()) {
+                    networks.remove(networkKey);
+                } else {
+                    networks.put(networkKey, Collections.unmodifiableList(networkGates));
+                    SignRenderScheduler.getInstance().markNetworkChanged(networkKey);
+                }
+            }
+            remaining = new ArrayList<>(gates.size() - unloaded.size());
+            for (Gate gate : gates) {
+                if (!gate.isRemoved()) {
+                    remaining.add(gate);
+                }
+            }
+            publish(remaining);
+            spatialIndex.removeWorld(world.getUID());
         } finally {
+            lock.writeLock().unlock();
+        }
+        GateMaterialiser.getInstance().onWorldUnload(world);
+        SignRenderScheduler.getInstance().onWorldUnload(world);
+        ChunkPrewarmer.getInstance().releaseWorld(world);
+        for (Gate gate : remaining) {
+            // Each gate's selection belongs to the thread owning the gate
+            GateScheduler.getInstance().execute(gate, gate::forgetRemovedGates);
+        }
+        for (Gate gate : unloaded) {
+            GateRemovedEvent.call(gate, GateRemovedEvent.Reason.UNLOADED);
+        }
+        Bukkit.getLogger().log(Level.INFO, "Unloaded " + unloaded.size() + " gates in world " + world.getName());
+    }
+
+    /**
+     * Get the number of gates kept as records while their world is not loaded
+     *
+     * @return number of dormant gates
+     */
+    public int getDormantCount() {
+        lock.readLock().lock();
+        try {
+            return dormant.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Start journaling changes, and fold anything replayed at load into a fresh snapshot. Records rejected while
+     * loading are left out of it; their data is in the quarantine file
+     */
+    public void startJournal() {
+        journal = new GateJournal(new File(dataFilename), new File(journalFilename));
+        journal.start();
+        compact();
+    }
+
+    /**
+     * Replace the snapshot with the current state and empty the journal. The files are written on the journal thread
+     */
+    public void compact() {
+        if (journal == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        // Taken before the journal lock, in the same order as removals that journal under the write lock
+        lock.readLock().lock();
+        try {
+            journal.compact(this::createRecords);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Metrics.COMPACT.recordSince(start);
+    }
+
+    /**
+     * Compact the journal once it holds as many records as a quarter of the gates, and at least
+     * {@link #MIN_RECORDS_BEFORE_COMPACTION}. A compaction rewrites every gate, so it waits until the journal has grown
+     * enough to be worth it
+     */
+    public void compactIfNeeded() {
+        if (journal == null) {
+            return;
+        }
+        int threshold = Math.max(MIN_RECORDS_BEFORE_COMPACTION, gates.size() / 4);
+        if (journal.getRecordsSinceCompaction() >= threshold) {
+            compact();
+        }
+    }
+
+    /**
+     * Create a record of the current state of every gate, including the dormant gates. Called with the read lock held
+     *
+     * @return list of records
+     */
+    private List<GateRecord> createRecords() {
+        List<Gate> gates = this.gates;
+        List<GateRecord> records = new ArrayList<>(gates.size() + dormant.size());
+        for (Gate gate : gates) {
+            records.add(GateRecord.fromGate(gate));
+        }
+        records.addAll(dormant.values());
+        return records;
+    }
+
+    /**
+     * Write the current state to file. Stops the journal, then atomically replaces the snapshot and removes the journal
+     */
+    public void writeStateToFile() {
+        long start = System.nanoTime();
+        if (journal != null) {
+            journal.close();
+        }
+        try {
+            List<GateRecord> records;
+            lock.readLock().lock();
             try {
-                if (writer != null) {
-                    writer.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+                records = createRecords();
+            } finally {
+                lock.readLock().unlock();
+            }
+            GateDataFile.write(new File(dataFilename), records);
+            if (journal != null) {
+                journal.clear();
             }
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Could not write the SimpleWarpGate data file", e);
         }
+        journal = null;
+        Metrics.SAVE.recordSince(start);
     }
 }
@@ -0,0 +1,144 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Places gates loaded from file into the world. Gates in loaded chunks are placed a few at a time each tick, and gates
+ * in unloaded chunks wait until their chunk loads, so starting the server never loads chunks just to set up gates.
+ * Each gate is placed by the thread owning it
+ */
+public class GateMaterialiser implements Runnable {
+    /**
+     * Maximum number of gates to place each tick
+     */
+    public static final int MAX_GATES_PER_TICK = 10;
+
+    private static final GateMaterialiser gateMaterialiser = new GateMaterialiser();
+
+    /**
+     * Gates whose chunks were loaded when last checked
+     */
+    private final Deque<Gate> ready;
+    /**
+     * Gates waiting for a chunk to load
+     */
+    private final ChunkWaitList waitingForChunk;
+
+    private GateMaterialiser() {
+        ready = new ArrayDeque<>();
+        waitingForChunk = new ChunkWaitList();
+    }
+
+    /**
+     * Get the materialiser
+     *
+     * @return the GateMaterialiser instance
+     */
+    public static GateMaterialiser getInstance() {
+        return gateMaterialiser;
+    }
+
+    /**
+     * Queue a gate to be placed in the world
+     *
+     * @param gate the gate
+     */
+    public synchronized void enqueue(Gate gate) {
+        long unloadedChunk = gate.findUnloadedChunk();
+        if (unloadedChunk == Gate.NO_CHUNK) {
+            ready.add(gate);
+        } else {
+            waitingForChunk.add(gate.getKey().getWorldIndex(), unloadedChunk, gate);
+        }
+    }
+
+    /**
+     * Queue the gates that were waiting for a chunk to load
+     *
+     * @param chunk the chunk that loaded
+     */
+    public synchronized void onChunkLoad(Chunk chunk) {
+        Set<Gate> waiting = waitingForChunk.release(chunk);
+        if (waiting != null) {
+            ready.addAll(waiting);
+        }
+    }
+
+    /**
+     * Stop waiting for chunks in a world that has unloaded
+     *
+     * @param world the world
+     */
+    public synchronized void onWorldUnload(World world) {
+        waitingForChunk.removeWorld(world);
+    }
+
+    /**
+     * Place gates for this tick
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        flush(MAX_GATES_PER_TICK);
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Place up to a number of gates whose chunks are loaded
+     *
+     * @param budget maximum number of gates to place
+     * @return number of gates placed
+     */
+    public synchronized int flush(int budget) {
+        int placed = 0;
+        while (placed < budget && !ready.isEmpty()) {
+            Gate gate = ready.poll();
+            if (gate.isRemoved() || gate.isMaterialised()) {
+                continue;
+            }
+            GateScheduler scheduler = GateScheduler.getInstance();
+            if (scheduler.isRegionThreaded()) {
+                scheduler.execute(gate, () -> place(gate));
+                placed++;
+            } else if (place(gate)) {
+                placed++;
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * Place a gate in the world, or hold it until its chunks load. Runs on the thread owning the gate
+     *
+     * @param gate the gate
+     * @return if the gate was placed
+     */
+    private boolean place(Gate gate) {
+        // The chunk may have unloaded again since the gate was queued
+        long unloadedChunk = gate.findUnloadedChunk();
+        if (unloadedChunk != Gate.NO_CHUNK) {
+            synchronized (this) {
+                waitingForChunk.add(gate.getKey().getWorldIndex(), unloadedChunk, gate);
+            }
+            return false;
+        }
+        long start = System.nanoTime();
+        gate.materialise();
+        FlightRecorder.getInstance().record(GateEventType.GATE_PLACED, gate, null, System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Get the number of gates ready to be placed
+     *
+     * @return number of queued gates
+     */
+    public synchronized int getQueuedCount() {
+        return ready.size();
+    }
+}
@@ -0,0 +1,80 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of gate names. Names are compared case insensitively, so "Spawn" and "spawn" are the same gate. Lookups can
+ * be made from any thread without locking
+ */
+public class GateNameRegistry {
+    /**
+     * Gates keyed by normalised name, for uniqueness checks and lookups
+     */
+    private final ConcurrentMap<String, Gate> byName;
+
+    public GateNameRegistry() {
+        byName = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Normalise a gate name so names that only differ by case are treated the same
+     *
+     * @param name the name
+     * @return the normalised name
+     */
+    public static String normalise(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check if a name is already used by a gate
+     *
+     * @param name name to check
+     * @return if the name is taken
+     */
+    public boolean contains(String name) {
+        return byName.containsKey(normalise(name));
+    }
+
+    /**
+     * Get a gate by name
+     *
+     * @param name the gate name, in any case
+     * @return the gate, or null if there is no gate with that name
+     */
+    public Gate get(String name) {
+        return byName.get(normalise(name));
+    }
+
+    /**
+     * Register a gate under its name
+     *
+     * @param gate the gate to add
+     * @return false if the name is already taken
+     */
+    public boolean add(Gate gate) {
+        String key = normalise(gate.getName());
+        return byName.putIfAbsent(key, gate) == null;
+    }
+
+    /**
+     * Remove a gate from the registry
+     *
+     * @param gate the gate to remove
+     * @return false if the gate was not registered
+     */
+    public boolean remove(Gate gate) {
+        return byName.remove(normalise(gate.getName()), gate);
+    }
+
+    /**
+     * Get the number of registered names
+     *
+     * @return number of gates
+     */
+    public int size() {
+        return byName.size();
+    }
+}
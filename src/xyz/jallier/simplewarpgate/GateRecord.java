@@ -0,0 +1,209 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.block.BlockFace;
+
+import java.util.UUID;
+
+/**
+ * Stored form of a gate, independent of any loaded world. Used to save and load gates
+ */
+public class GateRecord {
+    /**
+     * Number of fields written by {@link #serialize()}
+     */
+    private static final int FIELD_COUNT = 10;
+    /**
+     * Number of fields in a line of an old text data file
+     */
+    private static final int OLD_FIELD_COUNT = 4;
+
+    private final String name;
+    private final String worldName;
+    /**
+     * UUID of the world, or null for a record from an old text data file
+     */
+    private final UUID worldId;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final BlockFace direction;
+    /**
+     * Name of the shape of the frame
+     */
+    private final String shapeName;
+    /**
+     * Network the gate belongs to, or an empty string
+     */
+    private final String network;
+    /**
+     * Name of the selected destination, or null if none is selected
+     */
+    private final String destinationName;
+    private final int cursorIndex;
+    private final int gateListWindowIndex;
+    private final boolean portalActive;
+
+    /**
+     * Construct a new record
+     *
+     * @param name                the gate name
+     * @param worldName           name of the world the gate is in
+     * @param worldId             UUID of the world the gate is in, or null if not known
+     * @param x                   start block x coordinate
+     * @param y                   start block y coordinate
+     * @param z                   start block z coordinate
+     * @param direction           the gate direction
+     * @param shapeName           name of the shape of the frame
+     * @param network             network the gate belongs to, or an empty string
+     * @param destinationName     name of the selected destination, or null
+     * @param cursorIndex         position of the sign cursor
+     * @param gateListWindowIndex start of the displayed destinations
+     * @param portalActive        if the portal is open
+     */
+    public GateRecord(String name, String worldName, UUID worldId, int x, int y, int z, BlockFace direction, String shapeName,
+                      String network, String destinationName, int cursorIndex, int gateListWindowIndex,
+                      boolean portalActive) {
+        this.name = name;
+        this.worldName = worldName;
+        this.worldId = worldId;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.direction = direction;
+        this.shapeName = shapeName;
+        this.network = network;
+        this.destinationName = destinationName;
+        this.cursorIndex = cursorIndex;
+        this.gateListWindowIndex = gateListWindowIndex;
+        this.portalActive = portalActive;
+    }
+
+    /**
+     * Create a record of the current state of a gate
+     *
+     * @param gate the gate
+     * @return the record
+     */
+    public static GateRecord fromGate(Gate gate) {
+        GateKey key = gate.getKey();
+        Gate destination = gate.getSelectedDestination();
+        return new GateRecord(gate.getName(), key.getWorld().getName(), key.getWorldId(),
+                key.getX(), key.getY(), key.getZ(), key.getDirection(),
+                gate.getShape().getName(), gate.getNetwork(), destination == null ? null : destination.getName(),
+                gate.getCursorIndex(), gate.getGateListWindowIndex(), gate.portalIsActive());
+    }
+
+    /**
+     * Parse a record, either as written by {@link #serialize()} or as a line of an old text data file, which only has
+     * the name, world, coordinates and direction. A gate from an old file has no selection, the default shape, no
+     * network and no world UUID
+     *
+     * @param line the line
+     * @return the record
+     * @throws IllegalArgumentException if the line is not a valid record
+     */
+    public static GateRecord parse(String line) {
+        // Keep trailing empty fields, such as an empty network and world UUID
+        String[] gateData = line.split("::", -1);
+        if (gateData.length != OLD_FIELD_COUNT && gateData.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Expected " + OLD_FIELD_COUNT + " or " + FIELD_COUNT
+                    + " fields but found " + gateData.length);
+        }
+        String[] xyz = gateData[2].split(",");
+        if (xyz.length != 3) {
+            throw new IllegalArgumentException("Invalid coordinates: " + gateData[2]);
+        }
+        String name = gateData[0];
+        String worldName = gateData[1];
+        int x = Integer.parseInt(xyz[0]);
+        int y = Integer.parseInt(xyz[1]);
+        int z = Integer.parseInt(xyz[2]);
+        BlockFace direction = BlockFace.valueOf(gateData[3]);
+
+        if (gateData.length == OLD_FIELD_COUNT) {
+            return new GateRecord(name, worldName, null, x, y, z, direction, GateShape.DEFAULT_NAME, "",
+                    null, 0, 0, false);
+        }
+
+        String destinationName = gateData[4].isEmpty() ? null : gateData[4];
+        String[] cursor = gateData[5].split(",");
+        if (cursor.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor: " + gateData[5]);
+        }
+        int cursorIndex = Integer.parseInt(cursor[0]);
+        int gateListWindowIndex = Integer.parseInt(cursor[1]);
+        boolean portalActive = Boolean.parseBoolean(gateData[6]);
+        String shapeName = gateData[7];
+        String network = gateData[8];
+        UUID worldId = gateData[9].isEmpty() ? null : UUID.fromString(gateData[9]);
+        return new GateRecord(name, worldName, worldId, x, y, z, direction, shapeName, network,
+                destinationName, cursorIndex, gateListWindowIndex, portalActive);
+    }
+
+    /**
+     * Create a string representation of the record, to store in the data file
+     *
+     * @return string representing the gate state
+     */
+    public String serialize() {
+        return name + "::" + worldName + "::" + x + "," + y + "," + z + "::" + direction.name()
+                + "::" + (destinationName == null ? "" : destinationName)
+                + "::" + cursorIndex + "," + gateListWindowIndex
+                + "::" + portalActive
+                + "::" + shapeName
+                + "::" + network
+                + "::" + (worldId == null ? "" : worldId.toString());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getWorldName() {
+        return worldName;
+    }
+
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public BlockFace getDirection() {
+        return direction;
+    }
+
+    public String getShapeName() {
+        return shapeName;
+    }
+
+    public String getNetwork() {
+        return network;
+    }
+
+    public String getDestinationName() {
+        return destinationName;
+    }
+
+    public int getCursorIndex() {
+        return cursorIndex;
+    }
+
+    public int getGateListWindowIndex() {
+        return gateListWindowIndex;
+    }
+
+    public boolean isPortalActive() {
+        return portalActive;
+    }
+}
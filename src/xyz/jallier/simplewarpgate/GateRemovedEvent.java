@@ -0,0 +1,74 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called after a gate has been removed, either because its frame was broken or because its world unloaded. The gate is
+ * no longer in the world or the gate list
+ */
+public class GateRemovedEvent extends GateEvent {
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * Why the gate was removed
+     */
+    public enum Reason {
+        /**
+         * The gate's frame, sign or button was broken, and the gate is gone
+         */
+        DESTROYED,
+        /**
+         * The gate's world unloaded. The gate is created again when the world loads
+         */
+        UNLOADED
+    }
+
+    private final Reason reason;
+
+    /**
+     * Construct a new event
+     *
+     * @param gate   the gate that was removed
+     * @param reason why it was removed
+     */
+    GateRemovedEvent(Gate gate, Reason reason) {
+        super(gate);
+        this.reason = reason;
+    }
+
+    /**
+     * Call the event if anything is listening for it
+     *
+     * @param gate   the gate that was removed
+     * @param reason why it was removed
+     */
+    static void call(Gate gate, Reason reason) {
+        if (hasListeners(handlers)) {
+            Bukkit.getPluginManager().callEvent(new GateRemovedEvent(gate, reason));
+        }
+    }
+
+    /**
+     * Get why the gate was removed
+     *
+     * @return the reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the handlers of this event
+     *
+     * @return the handler list
+     */
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
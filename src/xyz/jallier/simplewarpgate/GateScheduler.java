@@ -0,0 +1,245 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Runs gate work on the thread that owns the blocks it touches. On a region threaded server (Folia) each region of a
+ * world is ticked by its own thread, so work on a gate is handed to the thread owning the gate's chunk, and the
+ * repeating tasks run on the global region. On other servers everything runs on the main thread.
+ * <p>
+ * The region schedulers are not part of the Spigot API the plugin is built against, so they are found by reflection
+ * when the plugin starts. Until then, as in the benchmarks, work runs straight away on the calling thread
+ */
+public class GateScheduler {
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+    private static final String SCHEDULER_PACKAGE = "io.papermc.paper.threadedregions.scheduler.";
+
+    private static final GateScheduler gateScheduler = new GateScheduler();
+
+    private Plugin plugin;
+    private boolean regionThreaded;
+    private Method isOwnedByCurrentRegion;
+    private Object regionScheduler;
+    private Method regionExecute;
+    private Object globalScheduler;
+    private Method globalRunAtFixedRate;
+    private Object asyncScheduler;
+    private Method asyncRunAtFixedRate;
+    private Method asyncRunNow;
+    private Method getEntityScheduler;
+    private Method entityRun;
+    private Method teleportAsync;
+
+    private GateScheduler() {
+        plugin = null;
+        regionThreaded = false;
+    }
+
+    /**
+     * Get the scheduler
+     *
+     * @return the GateScheduler instance
+     */
+    public static GateScheduler getInstance() {
+        return gateScheduler;
+    }
+
+    /**
+     * Start scheduling work for a plugin, using the region schedulers if the server has them
+     *
+     * @param plugin the plugin to run tasks for
+     */
+    public void start(Plugin plugin) {
+        this.plugin = plugin;
+        try {
+            Class.forName(REGIONIZED_SERVER);
+        } catch (ClassNotFoundException e) {
+            return; // Not region threaded
+        }
+        try {
+            Server server = plugin.getServer();
+            isOwnedByCurrentRegion = Server.class.getMethod("isOwnedByCurrentRegion", World.class, int.class,
+                    int.class);
+            regionScheduler = Server.class.getMethod("getRegionScheduler").invoke(server);
+            regionExecute = Class.forName(SCHEDULER_PACKAGE + "RegionScheduler").getMethod("execute", Plugin.class,
+                    World.class, int.class, int.class, Runnable.class);
+            globalScheduler = Server.class.getMethod("getGlobalRegionScheduler").invoke(server);
+            globalRunAtFixedRate = Class.forName(SCHEDULER_PACKAGE + "GlobalRegionScheduler").getMethod(
+                    "runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+            asyncScheduler = Server.class.getMethod("getAsyncScheduler").invoke(server);
+            Class<?> asyncClass = Class.forName(SCHEDULER_PACKAGE + "AsyncScheduler");
+            asyncRunAtFixedRate = asyncClass.getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class,
+                    long.class, TimeUnit.class);
+            asyncRunNow = asyncClass.getMethod("runNow", Plugin.class, Consumer.class);
+            getEntityScheduler = Entity.class.getMethod("getScheduler");
+            entityRun = Class.forName(SCHEDULER_PACKAGE + "EntityScheduler").getMethod("run", Plugin.class,
+                    Consumer.class, Runnable.class);
+            teleportAsync = Entity.class.getMethod("teleportAsync", Location.class);
+            regionThreaded = true;
+            plugin.getLogger().log(Level.INFO, "Region threaded server found; running gate work on region threads");
+        } catch (ReflectiveOperationException e) {
+            plugin.getLogger().log(Level.SEVERE, "Region threaded server found, but its schedulers could not be used",
+                    e);
+        }
+    }
+
+    /**
+     * Check if work is being handed to region threads
+     *
+     * @return if the server is region threaded
+     */
+    public boolean isRegionThreaded() {
+        return regionThreaded;
+    }
+
+    /**
+     * Run work on a gate on the thread that owns the gate. Runs now if this is that thread. Dropped if the gate's world
+     * is not loaded, as there are no blocks left to work on
+     *
+     * @param gate the gate
+     * @param task the work
+     */
+    public void execute(Gate gate, Runnable task) {
+        execute(gate, task, null);
+    }
+
+    /**
+     * Run work on a gate on the thread that owns the gate. Runs now if this is that thread. If the gate's world is not
+     * loaded, such as while it is unloading, the work is dropped and the fallback is run on this thread instead
+     *
+     * @param gate     the gate
+     * @param task     the work
+     * @param fallback what to do if the work is dropped, or null for nothing
+     */
+    public void execute(Gate gate, Runnable task, Runnable fallback) {
+        if (plugin == null) {
+            task.run();
+            return;
+        }
+        GateKey key = gate.getKey();
+        World world = key.getWorld();
+        if (world != null) {
+            execute(world, key.getX() >> 4, key.getZ() >> 4, task);
+            return;
+        }
+        if (Debug.isEnabled()) {
+            Debug.log("Dropped work on gate " + gate.getName() + "; its world is not loaded");
+        }
+        if (fallback != null) {
+            fallback.run();
+        }
+    }
+
+    /**
+     * Run work on the thread that owns a chunk. Runs now if this is that thread
+     *
+     * @param world  the world
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @param task   the work
+     */
+    public void execute(World world, int chunkX, int chunkZ, Runnable task) {
+        if (plugin == null) {
+            task.run();
+        } else if (!regionThreaded) {
+            if (Bukkit.isPrimaryThread()) {
+                task.run();
+            } else {
+                plugin.getServer().getScheduler().runTask(plugin, task);
+            }
+        } else if ((Boolean) invoke(isOwnedByCurrentRegion, plugin.getServer(), world, chunkX, chunkZ)) {
+            task.run();
+        } else {
+            invoke(regionExecute, regionScheduler, plugin, world, chunkX, chunkZ, task);
+        }
+    }
+
+    /**
+     * Run a task every few ticks on the main thread, or the global region of a region threaded server
+     *
+     * @param task        the task
+     * @param delayTicks  ticks before the first run, at least 1
+     * @param periodTicks ticks between runs
+     */
+    public void runRepeating(Runnable task, long delayTicks, long periodTicks) {
+        if (regionThreaded) {
+            Consumer<Object> consumer = scheduledTask -> task.run();
+            invoke(globalRunAtFixedRate, globalScheduler, plugin, consumer, delayTicks, periodTicks);
+        } else {
+            plugin.getServer().getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+        }
+    }
+
+    /**
+     * Run a task every few ticks off the server threads
+     *
+     * @param task        the task
+     * @param delayTicks  ticks before the first run
+     * @param periodTicks ticks between runs
+     */
+    public void runRepeatingAsync(Runnable task, long delayTicks, long periodTicks) {
+        if (regionThreaded) {
+            Consumer<Object> consumer = scheduledTask -> task.run();
+            invoke(asyncRunAtFixedRate, asyncScheduler, plugin, consumer, delayTicks * 50, periodTicks * 50,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+        }
+    }
+
+    /**
+     * Run a task once off the server threads
+     *
+     * @param task the task
+     */
+    public void runAsync(Runnable task) {
+        if (regionThreaded) {
+            Consumer<Object> consumer = scheduledTask -> task.run();
+            invoke(asyncRunNow, asyncScheduler, plugin, consumer);
+        } else {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+        }
+    }
+
+    /**
+     * Teleport a player. On a region threaded server the player is moved by their own thread, and may arrive after this
+     * returns
+     *
+     * @param player   the player
+     * @param location where to send them
+     */
+    public void teleport(Player player, Location location) {
+        if (!regionThreaded) {
+            player.teleport(location);
+            return;
+        }
+        Consumer<Object> consumer = scheduledTask -> invoke(teleportAsync, player, location);
+        invoke(entityRun, invoke(getEntityScheduler, player), plugin, consumer, null);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Read only view of the gates for other plugins. Registered with the services manager while the plugin is enabled, and
+ * found with {@code Bukkit.getServicesManager().load(GateService.class)}.
+ * <p>
+ * Lookups read an immutable directory of the gates, so they can be made from any thread without locking and never see
+ * a gate half added. The directory holds {@link GateInfo} copies rather than the gates themselves, and is made again
+ * the first time it is read after gates are added or removed. Listen for {@link GateCreatedEvent} and
+ * {@link GateRemovedEvent} to follow changes instead of polling
+ */
+public class GateService {
+    private static final Comparator<GateInfo> BY_X = Comparator.comparingInt(GateInfo::getX);
+
+    /**
+     * Directory made from the gates snapshot of one version. Null until first read
+     */
+    private volatile Directory directory;
+
+    /**
+     * The gates of one snapshot version, indexed for lookup
+     */
+    private static class Directory {
+        private final long version;
+        private final List<GateInfo> gates;
+        /**
+         * Gates by normalised name
+         */
+        private final Map<String, GateInfo> byName;
+        /**
+         * The gates of each world sorted by the x coordinate of their start block
+         */
+        private final Map<UUID, GateInfo[]> byWorld;
+
+        private Directory(long version, List<Gate> gates) {
+            this.version = version;
+            List<GateInfo> infos = new ArrayList<>(gates.size());
+            byName = new HashMap<>(gates.size() * 2);
+            Map<UUID, List<GateInfo>> worldGates = new HashMap<>();
+            for (Gate gate : gates) {
+                GateInfo info = GateInfo.of(gate);
+                infos.add(info);
+                byName.put(gate.getNameKey(), info);
+                worldGates.computeIfAbsent(info.getWorldId(), id -> new ArrayList<>()).add(info);
+            }
+            this.gates = Collections.unmodifiableList(infos);
+            byWorld = new HashMap<>(worldGates.size() * 2);
+            for (Map.Entry<UUID, List<GateInfo>> entry : worldGates.entrySet()) {
+                GateInfo[] sorted = entry.getValue().toArray(new GateInfo[0]);
+                Arrays.sort(sorted, BY_X);
+                byWorld.put(entry.getKey(), sorted);
+            }
+        }
+    }
+
+    /**
+     * Get a gate by name
+     *
+     * @param name the gate name, in any case
+     * @return the gate, or null if there is no gate with that name in a loaded world
+     */
+    public GateInfo getGate(String name) {
+        return current().byName.get(GateNameRegistry.normalise(name));
+    }
+
+    /**
+     * Get every gate in the loaded worlds
+     *
+     * @return list of gates, not to be modified
+     */
+    public List<GateInfo> getGates() {
+        return current().gates;
+    }
+
+    /**
+     * Get the gates in a world
+     *
+     * @param world the world
+     * @return list of gates, not to be modified
+     */
+    public List<GateInfo> getGates(World world) {
+        return getGates(world.getUID());
+    }
+
+    /**
+     * Get the gates in a world
+     *
+     * @param worldId UUID of the world
+     * @return list of gates, not to be modified
+     */
+    public List<GateInfo> getGates(UUID worldId) {
+        GateInfo[] gates = current().byWorld.get(worldId);
+        return gates == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(gates));
+    }
+
+    /**
+     * Get the gates in a world whose start block, the block the sign is placed against, is within an area
+     *
+     * @param world the world
+     * @param minX  smallest x coordinate, inclusive
+     * @param minZ  smallest z coordinate, inclusive
+     * @param maxX  largest x coordinate, inclusive
+     * @param maxZ  largest z coordinate, inclusive
+     * @return list of gates in the area
+     */
+    public List<GateInfo> getGatesInArea(World world, int minX, int minZ, int maxX, int maxZ) {
+        GateInfo[] gates = current().byWorld.get(world.getUID());
+        if (gates == null) {
+            return Collections.emptyList();
+        }
+        // First gate at or past minX
+        int low = 0;
+        int high = gates.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (gates[mid].getX() < minX) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<GateInfo> found = new ArrayList<>();
+        for (int i = low; i < gates.length && gates[i].getX() <= maxX; i++) {
+            int z = gates[i].getZ();
+            if (z >= minZ && z <= maxZ) {
+                found.add(gates[i]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the version of the gates. This changes every time a gate is added or removed
+     *
+     * @return the gates version
+     */
+    public long getVersion() {
+        return GateManager.getInstance().getVersion();
+    }
+
+    /**
+     * Get the directory of the current gates, making it again if gates have changed since it was made
+     *
+     * @return the directory
+     */
+    private Directory current() {
+        Directory current = directory;
+        GateManager manager = GateManager.getInstance();
+        // Read before the gates, so a change in between only makes the next read rebuild again
+        long version = manager.getVersion();
+        if (current == null || current.version != version) {
+            // Threads racing here build the same directory, so whichever is kept is fine
+            current = new Directory(version, manager.getActiveGates());
+            directory = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,377 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A gate frame template: the size of the opening, what the frame is made of, and where the sign and button go. Each
+ * shape is compiled once per direction into tables of block offsets from the start block, so checking a frame or
+ * finding the blocks of a gate is a walk over a fixed array.
+ * <p>
+ * Positions are described looking at the front of the gate, where the sign is. The start block is the side of the
+ * frame the sign is placed against, on the right. The opening is to the left of it, and the button goes on the far
+ * side of the frame
+ */
+public final class GateShape {
+    /**
+     * Name of the shape used by gates saved before shapes could be configured
+     */
+    public static final String DEFAULT_NAME = "default";
+    /**
+     * Largest opening width or height, the same as a vanilla nether portal
+     */
+    public static final int MAX_SIZE = 21;
+    private static final BlockFace[] HORIZONTAL_FACES = {BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH,
+            BlockFace.WEST};
+
+    private final String name;
+    private final int width;
+    private final int height;
+    private final Material frame;
+    private final boolean corners;
+    private final Material interior;
+    private final int signRow;
+    private final int buttonRow;
+    private final Map<BlockFace, Layout> layouts;
+
+    /**
+     * Construct a new shape and compile its layouts
+     *
+     * @param name      name of the shape, stored with each gate
+     * @param width     width of the opening
+     * @param height    height of the opening
+     * @param frame     material of the frame
+     * @param corners   if the frame corners are needed
+     * @param interior  material the opening is filled with while the portal is closed
+     * @param signRow   row of the opening the sign is level with, counted down from the top
+     * @param buttonRow row of the opening the button is level with, counted down from the top
+     * @throws IllegalArgumentException if the name cannot be stored, a size or row is out of range, or a material is
+     *                                  not a block
+     */
+    public GateShape(String name, int width, int height, Material frame, boolean corners, Material interior,
+                     int signRow, int buttonRow) {
+        if (name.isEmpty() || name.contains(":") || name.contains("|")) {
+            throw new IllegalArgumentException("Shape names cannot be empty or contain : or |");
+        }
+        if (width < 1 || width > MAX_SIZE || height < 1 || height > MAX_SIZE) {
+            throw new IllegalArgumentException("Opening must be between 1 and " + MAX_SIZE + " blocks each way");
+        }
+        if (signRow < 0 || signRow >= height || buttonRow < 0 || buttonRow >= height) {
+            throw new IllegalArgumentException("Sign and button rows must be inside the opening");
+        }
+        if (frame == null || !frame.isBlock() || frame.isAir()) {
+            throw new IllegalArgumentException("Frame material " + frame + " is not a solid block");
+        }
+        if (interior == null || !interior.isBlock() || interior == frame) {
+            throw new IllegalArgumentException("Interior material " + interior + " is not valid");
+        }
+        this.name = name;
+        this.width = width;
+        this.height = height;
+        this.frame = frame;
+        this.corners = corners;
+        this.interior = interior;
+        this.signRow = signRow;
+        this.buttonRow = buttonRow;
+        layouts = new EnumMap<>(BlockFace.class);
+        for (BlockFace face : HORIZONTAL_FACES) {
+            layouts.put(face, new Layout(face));
+        }
+    }
+
+    /**
+     * Create the built in shape: a vanilla sized obsidian portal without corners, with the sign and button level with
+     * the middle of the opening
+     *
+     * @return the default shape
+     */
+    public static GateShape createDefault() {
+        return new GateShape(DEFAULT_NAME, 2, 3, Material.OBSIDIAN, false, Material.AIR, 1, 1);
+    }
+
+    /**
+     * Read a shape from the config. Missing settings are taken from the default shape
+     *
+     * @param name    name of the shape
+     * @param section the config section of the shape
+     * @return the shape
+     * @throws IllegalArgumentException if a setting is not valid
+     */
+    public static GateShape fromConfig(String name, ConfigurationSection section) {
+        int height = section.getInt("height", 3);
+        int middleRow = (height - 1) / 2;
+        int signRow = section.getInt("sign-row", middleRow);
+        return new GateShape(name,
+                section.getInt("width", 2),
+                height,
+                parseMaterial(section.getString("frame", "OBSIDIAN")),
+                section.getBoolean("corners", false),
+                parseMaterial(section.getString("interior", "AIR")),
+                signRow,
+                section.getInt("button-row", signRow));
+    }
+
+    private static Material parseMaterial(String name) {
+        Material material = Material.matchMaterial(name);
+        if (material == null) {
+            throw new IllegalArgumentException("Unknown material " + name);
+        }
+        return material;
+    }
+
+    /**
+     * Check if the blocks around a start block make this shape. Stops at the first block that does not match
+     *
+     * @param startBlock the block the sign was placed against
+     * @param direction  the direction the sign faces
+     * @return if the frame is complete
+     */
+    public boolean matches(Block startBlock, BlockFace direction) {
+        Layout layout = layouts.get(direction);
+        if (layout == null) {
+            return false;
+        }
+        World world = startBlock.getWorld();
+        int x = startBlock.getX();
+        int y = startBlock.getY();
+        int z = startBlock.getZ();
+        int[] offsets = layout.frameOffsets;
+        for (int i = 0; i < offsets.length; i += 3) {
+            if (world.getBlockAt(x + offsets[i], y + offsets[i + 1], z + offsets[i + 2]).getType() != frame) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the compiled layout for a direction
+     *
+     * @param direction the direction the sign faces
+     * @return the layout, or null if the direction is not horizontal
+     */
+    public Layout getLayout(BlockFace direction) {
+        return layouts.get(direction);
+    }
+
+    /**
+     * Get how far the gate reaches from its start block along the frame, counting the far side
+     *
+     * @return distance in blocks
+     */
+    public int getReach() {
+        return width + 1;
+    }
+
+    /**
+     * Get name
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the material of the frame
+     *
+     * @return frame material
+     */
+    public Material getFrame() {
+        return frame;
+    }
+
+    /**
+     * Get the material the opening is filled with while the portal is closed
+     *
+     * @return interior material
+     */
+    public Material getInterior() {
+        return interior;
+    }
+
+    /**
+     * The offsets of every block of a shape from the start block, for one direction. The offset arrays hold x, y, z
+     * triples. They are shared and must not be modified
+     */
+    public final class Layout {
+        private final int alongX;
+        private final int alongZ;
+        private final int[] frameOffsets;
+        private final int[] interiorOffsets;
+        private final int[] signOffset;
+        private final int[] buttonOffset;
+        private final int[] farSideOffset;
+        private final int arrivalHeight;
+
+        private Layout(BlockFace direction) {
+            // Looking at the front, the frame runs to the left of the start block
+            alongX = -direction.getModZ();
+            alongZ = direction.getModX();
+            int frontX = direction.getModX();
+            int frontZ = direction.getModZ();
+            int top = signRow;
+            int bottom = signRow - height + 1;
+
+            int frameCount = 2 * width + 2 * height + (corners ? 4 : 0);
+            frameOffsets = new int[frameCount * 3];
+            int count = 0;
+            // Sides first: a sign on something that is not a gate usually fails next to the start block
+            for (int v = top; v >= bottom; v--) {
+                count = put(frameOffsets, count, 0, v, 0);
+                count = put(frameOffsets, count, width + 1, v, 0);
+            }
+            for (int u = 1; u <= width; u++) {
+                count = put(frameOffsets, count, u, top + 1, 0);
+                count = put(frameOffsets, count, u, bottom - 1, 0);
+            }
+            if (corners) {
+                count = put(frameOffsets, count, 0, top + 1, 0);
+                count = put(frameOffsets, count, width + 1, top + 1, 0);
+                count = put(frameOffsets, count, 0, bottom - 1, 0);
+                put(frameOffsets, count, width + 1, bottom - 1, 0);
+            }
+
+            interiorOffsets = new int[width * height * 3];
+            count = 0;
+            for (int v = top; v >= bottom; v--) {
+                for (int u = 1; u <= width; u++) {
+                    count = put(interiorOffsets, count, u, v, 0);
+                }
+            }
+
+            signOffset = new int[]{frontX, 0, frontZ};
+            buttonOffset = new int[3];
+            put(buttonOffset, 0, width + 1, signRow - buttonRow, 1);
+            farSideOffset = new int[3];
+            put(farSideOffset, 0, width + 1, 0, 0);
+            // Players arrive standing one block up from the bottom of the opening, or on it if the opening is too low
+            arrivalHeight = height >= 3 ? bottom + 1 : bottom;
+        }
+
+        /**
+         * Write the offset of a position given across, up and out from the start block
+         */
+        private int put(int[] offsets, int index, int across, int up, int out) {
+            // Out is the direction the sign faces, a quarter turn from along
+            offsets[index] = across * alongX + out * alongZ;
+            offsets[index + 1] = up;
+            offsets[index + 2] = across * alongZ - out * alongX;
+            return index + 3;
+        }
+
+        /**
+         * Get the shape this layout belongs to
+         *
+         * @return the shape
+         */
+        public GateShape getShape() {
+            return GateShape.this;
+        }
+
+        /**
+         * Get the offsets of the frame blocks
+         *
+         * @return x, y, z triples
+         */
+        public int[] getFrameOffsets() {
+            return frameOffsets;
+        }
+
+        /**
+         * Get the offsets of the blocks in the opening
+         *
+         * @return x, y, z triples
+         */
+        public int[] getInteriorOffsets() {
+            return interiorOffsets;
+        }
+
+        /**
+         * Get the offset of the sign
+         *
+         * @return x, y, z
+         */
+        public int[] getSignOffset() {
+            return signOffset;
+        }
+
+        /**
+         * Get the offset of the button
+         *
+         * @return x, y, z
+         */
+        public int[] getButtonOffset() {
+            return buttonOffset;
+        }
+
+        /**
+         * Get the offset of the far side of the frame, level with the start block
+         *
+         * @return x, y, z
+         */
+        public int[] getFarSideOffset() {
+            return farSideOffset;
+        }
+
+        /**
+         * Get the x step from one column of the opening to the next, moving away from the start block
+         *
+         * @return -1, 0 or 1
+         */
+        public int getAlongX() {
+            return alongX;
+        }
+
+        /**
+         * Get the z step from one column of the opening to the next, moving away from the start block
+         *
+         * @return -1, 0 or 1
+         */
+        public int getAlongZ() {
+            return alongZ;
+        }
+
+        /**
+         * Get the width of the opening
+         *
+         * @return width in blocks
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Get the height of the top of the opening above the start block
+         *
+         * @return y offset
+         */
+        public int getTop() {
+            return signRow;
+        }
+
+        /**
+         * Get the height of the bottom of the opening relative to the start block
+         *
+         * @return y offset, zero or below
+         */
+        public int getBottom() {
+            return signRow - height + 1;
+        }
+
+        /**
+         * Get the height players arrive at, relative to the start block
+         *
+         * @return y offset
+         */
+        public int getArrivalHeight() {
+            return arrivalHeight;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * The gate shapes that can be built, in the order they are tried. Until the config is loaded only the default shape is
+ * known
+ */
+public final class GateShapes {
+    private static Map<String, GateShape> shapes;
+    private static List<GateShape> order;
+    private static Set<Material> frameMaterials;
+    private static int maxReach;
+
+    static {
+        load(null);
+    }
+
+    private GateShapes() {
+    }
+
+    /**
+     * Replace the shapes with the ones in a config section. Shapes that are not valid are skipped with a warning. The
+     * default shape is always available, so gates saved before shapes could be configured still load
+     *
+     * @param section the section holding one section per shape, or null to use only the default shape
+     */
+    public static void load(ConfigurationSection section) {
+        Map<String, GateShape> loaded = new LinkedHashMap<>();
+        if (section != null) {
+            for (String name : section.getKeys(false)) {
+                ConfigurationSection shapeSection = section.getConfigurationSection(name);
+                if (shapeSection == null) {
+                    Bukkit.getLogger().log(Level.WARNING, "Gate shape " + name + " is not a section; skipping");
+                    continue;
+                }
+                try {
+                    loaded.put(name, GateShape.fromConfig(name, shapeSection));
+                } catch (IllegalArgumentException e) {
+                    Bukkit.getLogger().log(Level.WARNING, "Gate shape " + name + " is not valid: " + e.getMessage());
+                }
+            }
+        }
+        if (!loaded.containsKey(GateShape.DEFAULT_NAME)) {
+            loaded.put(GateShape.DEFAULT_NAME, GateShape.createDefault());
+        }
+        Set<Material> materials = EnumSet.noneOf(Material.class);
+        int reach = 0;
+        for (GateShape shape : loaded.values()) {
+            materials.add(shape.getFrame());
+            reach = Math.max(reach, shape.getReach());
+        }
+        shapes = loaded;
+        order = new ArrayList<>(loaded.values());
+        frameMaterials = materials;
+        maxReach = reach;
+    }
+
+    /**
+     * Get a shape by name
+     *
+     * @param name name of the shape
+     * @return the shape, or null if there is no shape with that name
+     */
+    public static GateShape get(String name) {
+        return shapes.get(name);
+    }
+
+    /**
+     * Get the shape used when none is given
+     *
+     * @return the default shape
+     */
+    public static GateShape getDefault() {
+        return shapes.get(GateShape.DEFAULT_NAME);
+    }
+
+    /**
+     * Get every shape, in the order they are tried
+     *
+     * @return list of shapes
+     */
+    public static List<GateShape> getShapes() {
+        return Collections.unmodifiableList(order);
+    }
+
+    /**
+     * Check if a material is used for the frame of any shape
+     *
+     * @param material the material
+     * @return if a sign placed against the material could make a gate
+     */
+    public static boolean isFrameMaterial(Material material) {
+        return frameMaterials.contains(material);
+    }
+
+    /**
+     * Get the furthest any shape reaches from its start block along the frame
+     *
+     * @return distance in blocks
+     */
+    public static int getMaxReach() {
+        return maxReach;
+    }
+
+    /**
+     * Find the first shape the blocks around a start block make
+     *
+     * @param startBlock the block the sign was placed against
+     * @param direction  the direction the sign faces
+     * @return the shape, or null if the blocks do not make any shape
+     */
+    public static GateShape match(Block startBlock, BlockFace direction) {
+        Material startType = startBlock.getType();
+        List<GateShape> shapes = order;
+        for (int i = 0; i < shapes.size(); i++) {
+            GateShape shape = shapes.get(i);
+            if (shape.getFrame() == startType && shape.matches(startBlock, direction)) {
+                return shape;
+            }
+        }
+        return null;
+    }
+}
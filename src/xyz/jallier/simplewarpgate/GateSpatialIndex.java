@@ -0,0 +1,135 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Spatial index of gates, bucketed by world and chunk. Used to find gates near a position without checking every gate
+ */
+public class GateSpatialIndex {
+    /**
+     * Gates in each world, keyed by the packed chunk coordinate of their start block. Each bucket is replaced, never
+     * modified, when a gate is added or removed, so a bucket handed out stays valid without the lock
+     */
+    private final Map<UUID, LongObjectMap<List<Gate>>> worlds;
+
+    public GateSpatialIndex() {
+        worlds = new HashMap<>();
+    }
+
+    /**
+     * Pack a chunk coordinate into a single long
+     *
+     * @param chunkX chunk x coordinate
+     * @param chunkZ chunk z coordinate
+     * @return the packed key
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Add a gate to the index
+     *
+     * @param gate the gate to add
+     */
+    public void add(Gate gate) {
+        GateKey gateKey = gate.getKey();
+        LongObjectMap<List<Gate>> chunks = worlds.computeIfAbsent(gateKey.getWorldId(), k -> new LongObjectMap<>());
+        long key = chunkKey(gateKey.getX() >> 4, gateKey.getZ() >> 4);
+        List<Gate> old = chunks.get(key);
+        List<Gate> bucket = new ArrayList<>(old == null ? 1 : old.size() + 1);
+        if (old != null) {
+            bucket.addAll(old);
+        }
+        bucket.add(gate);
+        chunks.put(key, Collections.unmodifiableList(bucket));
+    }
+
+    /**
+     * Remove a gate from the index
+     *
+     * @param gate the gate to remove
+     */
+    public void remove(Gate gate) {
+        GateKey gateKey = gate.getKey();
+        LongObjectMap<List<Gate>> chunks = worlds.get(gateKey.getWorldId());
+        if (chunks == null) {
+            return;
+        }
+        long key = chunkKey(gateKey.getX() >> 4, gateKey.getZ() >> 4);
+        List<Gate> old = chunks.get(key);
+        if (old == null || !old.contains(gate)) {
+            return;
+        }
+        if (old.size() == 1) {
+            chunks.remove(key);
+        } else {
+            List<Gate> bucket = new ArrayList<>(old);
+            bucket.remove(gate);
+            chunks.put(key, Collections.unmodifiableList(bucket));
+        }
+        if (chunks.isEmpty()) {
+            worlds.remove(gateKey.getWorldId());
+        }
+    }
+
+    /**
+     * Remove every gate in a world from the index
+     *
+     * @param worldId UUID of the world
+     */
+    public void removeWorld(UUID worldId) {
+        worlds.remove(worldId);
+    }
+
+    /**
+     * Get the gates whose start block is in any chunk overlapping the square of the given radius around a block
+     * position. When only one of the chunks has gates, which is the usual case, its bucket is returned as it is, so
+     * nothing is allocated
+     *
+     * @param world  the world to look in
+     * @param x      block x coordinate
+     * @param z      block z coordinate
+     * @param radius radius in blocks
+     * @return list of gates near the position, not to be modified
+     */
+    public List<Gate> getGatesNear(World world, int x, int z, int radius) {
+        LongObjectMap<List<Gate>> chunks = worlds.get(world.getUID());
+        if (chunks == null) {
+            return Collections.emptyList();
+        }
+        int minChunkX = (x - radius) >> 4;
+        int maxChunkX = (x + radius) >> 4;
+        int minChunkZ = (z - radius) >> 4;
+        int maxChunkZ = (z + radius) >> 4;
+        List<Gate> first = null;
+        List<Gate> found = null;
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                List<Gate> bucket = chunks.get(chunkKey(chunkX, chunkZ));
+                if (bucket == null) {
+                    continue;
+                }
+                if (first == null) {
+                    first = bucket;
+                } else {
+                    if (found == null) {
+                        found = new ArrayList<>(first);
+                    }
+                    found.addAll(bucket);
+                }
+            }
+        }
+        if (found != null) {
+            return found;
+        }
+        return first == null ? Collections.emptyList() : first;
+    }
+}
@@ -0,0 +1,106 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+/**
+ * Called when a player is about to arrive at a gate through a portal. Cancelling it leaves the player where they are.
+ * Called on the thread owning the destination gate
+ */
+public class GateTeleportEvent extends PlayerEvent implements Cancellable {
+    private static final HandlerList handlers = new HandlerList();
+
+    private final GateInfo source;
+    private final GateInfo destination;
+    private Location to;
+    private boolean cancelled;
+
+    /**
+     * Construct a new event
+     *
+     * @param player      the player travelling
+     * @param source      the gate travelling from, or null if the player waited in a queue
+     * @param destination the gate travelling to
+     * @param to          where the player will arrive
+     */
+    GateTeleportEvent(Player player, Gate source, Gate destination, Location to) {
+        super(player, !Bukkit.isPrimaryThread());
+        this.source = GateInfo.of(source);
+        this.destination = GateInfo.of(destination);
+        this.to = to;
+        cancelled = false;
+    }
+
+    /**
+     * Check if anything is listening for the event, so it only needs to be made when something is
+     *
+     * @return if the event has listeners
+     */
+    static boolean hasListeners() {
+        return GateEvent.hasListeners(handlers);
+    }
+
+    /**
+     * Get the gate the player is travelling from
+     *
+     * @return the source gate, or null if the player waited in a queue to arrive
+     */
+    public GateInfo getSource() {
+        return source;
+    }
+
+    /**
+     * Get the gate the player is travelling to
+     *
+     * @return the destination gate
+     */
+    public GateInfo getDestination() {
+        return destination;
+    }
+
+    /**
+     * Get where the player will arrive
+     *
+     * @return the arrival location
+     */
+    public Location getTo() {
+        return to;
+    }
+
+    /**
+     * Change where the player will arrive
+     *
+     * @param to the new arrival location
+     */
+    public void setTo(Location to) {
+        this.to = to;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Get the handlers of this event
+     *
+     * @return the handler list
+     */
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
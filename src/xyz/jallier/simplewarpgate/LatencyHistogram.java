@@ -0,0 +1,152 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took in fixed buckets, from 1 microsecond to 100 milliseconds. Recording never allocates,
+ * and is safe from any thread
+ */
+public class LatencyHistogram {
+    /**
+     * Upper bound of each bucket in nanoseconds. Anything slower goes in a final overflow bucket
+     */
+    private static final long[] BOUNDS_NANOS = {
+            1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L
+    };
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sumNanos;
+
+    /**
+     * Construct a new histogram. Use {@link Metrics} to create registered histograms
+     *
+     * @param name name of the histogram, in Prometheus form
+     * @param help description of what is timed
+     */
+    LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+        buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+        count = new AtomicLong();
+        sumNanos = new AtomicLong();
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        sumNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Record the time since a start time
+     *
+     * @param startNanos start time from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the number of recorded durations
+     *
+     * @return number of durations
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the total of every recorded duration
+     *
+     * @return total nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    /**
+     * Get the number of buckets, including the overflow bucket
+     *
+     * @return number of buckets
+     */
+    public int getBucketCount() {
+        return buckets.length();
+    }
+
+    /**
+     * Get the number of durations in a bucket
+     *
+     * @param bucket index of the bucket
+     * @return number of durations
+     */
+    public long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Get the upper bound of a bucket
+     *
+     * @param bucket index of the bucket
+     * @return upper bound in nanoseconds, or Long.MAX_VALUE for the overflow bucket
+     */
+    public static long getBucketBoundNanos(int bucket) {
+        return bucket < BOUNDS_NANOS.length ? BOUNDS_NANOS[bucket] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Estimate a quantile as the upper bound of the bucket it falls in
+     *
+     * @param quantile quantile between 0 and 1
+     * @return upper bound in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getQuantileNanos(double quantile) {
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return getBucketBoundNanos(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Get name
+     *
+     * @return name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get help text
+     *
+     * @return help text
+     */
+    public String getHelp() {
+        return help;
+    }
+}
@@ -0,0 +1,142 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts and timings collected while loading the gate data, logged as a summary once loading is finished
+ */
+public class LoadReport {
+    /**
+     * Time spent in each phase, in the order the phases ran
+     */
+    private final Map<String, Long> phaseNanos;
+    private String currentPhase;
+    private long phaseStart;
+    private int recordsRead;
+    private int recordsAccepted;
+    private int recordsRejected;
+
+    public LoadReport() {
+        phaseNanos = new LinkedHashMap<>();
+        currentPhase = null;
+    }
+
+    /**
+     * Start timing a phase, ending the previous one
+     *
+     * @param name name of the phase
+     */
+    public void startPhase(String name) {
+        endPhase();
+        currentPhase = name;
+        phaseStart = System.nanoTime();
+    }
+
+    /**
+     * Stop timing the current phase
+     */
+    public void endPhase() {
+        if (currentPhase == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - phaseStart;
+        Long previous = phaseNanos.get(currentPhase);
+        phaseNanos.put(currentPhase, previous == null ? elapsed : previous + elapsed);
+        currentPhase = null;
+    }
+
+    /**
+     * Count records read from disk
+     *
+     * @param count number of records
+     */
+    public void addRead(int count) {
+        recordsRead += count;
+    }
+
+    /**
+     * Count records accepted and loaded
+     *
+     * @param count number of records
+     */
+    public void addAccepted(int count) {
+        recordsAccepted += count;
+    }
+
+    /**
+     * Count records rejected
+     *
+     * @param count number of records
+     */
+    public void addRejected(int count) {
+        recordsRejected += count;
+    }
+
+    /**
+     * Get the number of records read from disk
+     *
+     * @return number of records
+     */
+    public int getRecordsRead() {
+        return recordsRead;
+    }
+
+    /**
+     * Get the number of records accepted
+     *
+     * @return number of records
+     */
+    public int getRecordsAccepted() {
+        return recordsAccepted;
+    }
+
+    /**
+     * Get the number of records rejected
+     *
+     * @return number of records
+     */
+    public int getRecordsRejected() {
+        return recordsRejected;
+    }
+
+    /**
+     * Get the total time spent in every phase
+     *
+     * @return total nanoseconds
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (long nanos : phaseNanos.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Log the summary
+     *
+     * @param logger the logger to write to
+     */
+    public void log(Logger logger) {
+        endPhase();
+        long totalNanos = getTotalNanos();
+        double seconds = totalNanos / 1e9;
+        long recordsPerSecond = seconds > 0 ? (long) (recordsRead / seconds) : recordsRead;
+        StringBuilder phases = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            if (phases.length() > 0) {
+                phases.append(", ");
+            }
+            phases.append(phase.getKey()).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(phase.getValue())).append("ms");
+        }
+        logger.log(recordsRejected > 0 ? Level.WARNING : Level.INFO, String.format(
+                "Loaded %d of %d gate records (%d rejected) in %dms, %d records/sec [%s]",
+                recordsAccepted, recordsRead, recordsRejected, TimeUnit.NANOSECONDS.toMillis(totalNanos),
+                recordsPerSecond, phases));
+    }
+}
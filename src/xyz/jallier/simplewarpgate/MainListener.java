@@ -1,6 +1,5 @@
 package xyz.jallier.simplewarpgate;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
@@ -8,48 +7,258 @@ import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.type.WallSign;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.player.PlayerPortalEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class MainListener implements Listener {
-    private final Logger logger = Bukkit.getLogger();
+    /**
+     * Start of the top line of a sign that searches a gate's destinations, such as "?spawn"
+     */
+    private static final String SEARCH_MARKER = "?";
 
     /**
-     * Handle destroying gates
+     * Handle players breaking gate blocks
      *
      * @param blockBreakEvent event
      */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onBlockBreakEvent(BlockBreakEvent blockBreakEvent) {
-        Block brokenBlock = blockBreakEvent.getBlock();
-        Material blockType = brokenBlock.getType();
-        if (!(blockType == Material.OBSIDIAN
-                || blockType == Material.OAK_WALL_SIGN
-                || blockType == Material.STONE_BUTTON
-        )) {
-            return; // We only care about signs, stone buttons and obsidian blocks
+        long start = System.nanoTime();
+        try {
+            Gate brokenGate = GateManager.getInstance().handleBlockDestroyed(blockBreakEvent.getBlock());
+            if (brokenGate != null) {
+                blockBreakEvent.getPlayer().sendMessage("Gate " + brokenGate.getName() + " has been destroyed");
+            }
+        } finally {
+            finish(Metrics.BLOCK_BREAK, start);
         }
+    }
 
-        // Check if the broken block belonged to a gate
-        GateManager gateManager = GateManager.getInstance();
-        Gate brokenGate = null;
-        List<Gate> gates = gateManager.getActiveGates();
-        for (Gate gate : gates) {
-            if (Gate.checkBlocksAreValid(gate.getStartBlock(), gate.getDirection())) {
-                brokenGate = gate;
-            }
+    /**
+     * Handle entities such as TNT and creepers destroying gate blocks
+     *
+     * @param entityExplodeEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent entityExplodeEvent) {
+        long start = System.nanoTime();
+        try {
+            handleBlocksDestroyed(entityExplodeEvent.blockList());
+        } finally {
+            finish(Metrics.ENTITY_EXPLODE, start);
         }
-        if (brokenGate == null) {
-            return;
+    }
+
+    /**
+     * Handle block explosions such as beds destroying gate blocks
+     *
+     * @param blockExplodeEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent blockExplodeEvent) {
+        long start = System.nanoTime();
+        try {
+            handleBlocksDestroyed(blockExplodeEvent.blockList());
+        } finally {
+            finish(Metrics.BLOCK_EXPLODE, start);
         }
+    }
 
-        gateManager.removeGate(brokenGate);
+    /**
+     * Handle pistons pushing or breaking gate blocks
+     *
+     * @param pistonExtendEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent pistonExtendEvent) {
+        long start = System.nanoTime();
+        try {
+            handleBlocksDestroyed(pistonExtendEvent.getBlocks());
+            handleBlocksMoved(pistonExtendEvent.getBlocks(), pistonExtendEvent.getDirection());
+            GateManager.getInstance().handleBlockChanged(
+                    pistonExtendEvent.getBlock().getRelative(pistonExtendEvent.getDirection()));
+        } finally {
+            finish(Metrics.PISTON_EXTEND, start);
+        }
+    }
+
+    /**
+     * Handle sticky pistons pulling gate blocks
+     *
+     * @param pistonRetractEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent pistonRetractEvent) {
+        long start = System.nanoTime();
+        try {
+            handleBlocksDestroyed(pistonRetractEvent.getBlocks());
+            handleBlocksMoved(pistonRetractEvent.getBlocks(), pistonRetractEvent.getDirection());
+            GateManager.getInstance().handleBlockChanged(
+                    pistonRetractEvent.getBlock().getRelative(pistonRetractEvent.getDirection()));
+        } finally {
+            finish(Metrics.PISTON_RETRACT, start);
+        }
+    }
+
+    /**
+     * Handle players placing blocks near gates
+     *
+     * @param blockPlaceEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent blockPlaceEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().handleBlockChanged(blockPlaceEvent.getBlock());
+        } finally {
+            finish(Metrics.BLOCK_PLACE, start);
+        }
+    }
+
+    /**
+     * Handle falling blocks landing and mobs changing blocks near gates
+     *
+     * @param entityChangeBlockEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent entityChangeBlockEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().handleBlockDestroyed(entityChangeBlockEvent.getBlock());
+        } finally {
+            finish(Metrics.ENTITY_CHANGE_BLOCK, start);
+        }
+    }
+
+    /**
+     * Handle fire burning gate blocks
+     *
+     * @param blockBurnEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBurn(BlockBurnEvent blockBurnEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().handleBlockDestroyed(blockBurnEvent.getBlock());
+        } finally {
+            finish(Metrics.BLOCK_BURN, start);
+        }
+    }
+
+    /**
+     * Handle water and lava washing away gate blocks
+     *
+     * @param blockFromToEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockFromTo(BlockFromToEvent blockFromToEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().handleBlockDestroyed(blockFromToEvent.getToBlock());
+        } finally {
+            finish(Metrics.BLOCK_FROM_TO, start);
+        }
+    }
+
+    /**
+     * Place gates and redraw signs that were skipped while their chunk was unloaded
+     *
+     * @param chunkLoadEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent chunkLoadEvent) {
+        long start = System.nanoTime();
+        try {
+            GateMaterialiser.getInstance().onChunkLoad(chunkLoadEvent.getChunk());
+            SignRenderScheduler.getInstance().onChunkLoad(chunkLoadEvent.getChunk());
+        } finally {
+            finish(Metrics.CHUNK_LOAD, start);
+        }
+    }
+
+    /**
+     * Create the gates of a world when it loads
+     *
+     * @param worldLoadEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent worldLoadEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().loadWorld(worldLoadEvent.getWorld());
+        } finally {
+            finish(Metrics.WORLD_LOAD, start);
+        }
+    }
+
+    /**
+     * Let go of the gates of a world when it unloads, so the world can be freed
+     *
+     * @param worldUnloadEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent worldUnloadEvent) {
+        long start = System.nanoTime();
+        try {
+            GateManager.getInstance().unloadWorld(worldUnloadEvent.getWorld());
+        } finally {
+            finish(Metrics.WORLD_UNLOAD, start);
+        }
+    }
+
+    /**
+     * Record how long a handler took, and count it towards the plugin work this tick
+     *
+     * @param histogram the handler histogram
+     * @param start     start time from {@link System#nanoTime()}
+     */
+    private static void finish(LatencyHistogram histogram, long start) {
+        long nanos = System.nanoTime() - start;
+        histogram.record(nanos);
+        FlightRecorder.getInstance().addWork(nanos);
+    }
+
+    /**
+     * Update the gates near the positions blocks were moved into
+     *
+     * @param blocks    the moved blocks
+     * @param direction the direction they moved
+     */
+    private void handleBlocksMoved(List<Block> blocks, BlockFace direction) {
+        GateManager gateManager = GateManager.getInstance();
+        for (int i = 0; i < blocks.size(); i++) {
+            gateManager.handleBlockChanged(blocks.get(i).getRelative(direction));
+        }
+    }
+
+    /**
+     * Update the gates owning any of the destroyed blocks. Only the affected blocks are looked up
+     *
+     * @param blocks the destroyed blocks
+     */
+    private void handleBlocksDestroyed(List<Block> blocks) {
+        GateManager gateManager = GateManager.getInstance();
+        for (int i = 0; i < blocks.size(); i++) {
+            gateManager.handleBlockDestroyed(blocks.get(i));
+        }
     }
 
     /**
@@ -59,58 +268,54 @@ public class MainListener implements Listener {
      */
     @EventHandler
     public void onPlayerPortalEvent(PlayerPortalEvent playerPortalEvent) {
-        logger.log(Level.INFO, "Handling player portal");
-        playerPortalEvent.setCancelled(true);
-        Player player = playerPortalEvent.getPlayer();
-        Location playerLocation = player.getLocation();
-        GateManager gateManager = GateManager.getInstance();
-        List<Gate> gates = gateManager.getActiveGates();
-        logger.log(Level.INFO, player.getLocation() + "");
-        Gate activatedGate = null;
-        for (Gate gate : gates) {
-            Location location = gate.getStartBlock().getLocation();
-            double gateX = location.getX();
-            double playerX = playerLocation.getX();
-            double gateY = location.getY();
-            double playerY = playerLocation.getY();
-            double gateZ = location.getZ();
-            double playerZ = playerLocation.getZ();
-            if (
-                    (playerX >= gateX - 3 && playerX <= gateX + 3) &&
-                            (playerY >= gateY - 1 && playerY <= gateY + 1) &&
-                            (playerZ >= gateZ - 3 && playerZ <= gateZ + 3)
-            ) {
-                logger.log(Level.INFO, "player within the bounds of the portal");
-                activatedGate = gate;
-            }
-        }
-
-        if (activatedGate == null) {
-            // portal does not belong to a gate; let it process normally
-            playerPortalEvent.setCancelled(false);
-            return;
-        }
-
-        // Very shoddy code to ensure player is looking same direction as portal on teleport
-        Gate destGate = activatedGate.getSelectedDestination();
-        Location location = destGate.getStartBlock().getLocation();
-        double distance = 1.25;
-        switch (destGate.getDirection()) {
-            case NORTH:
-            case SOUTH:
-                int modZ = destGate.getDirection().getModZ();
-                location.setYaw(modZ < 0 ? 180F : 0f);
-                location.add(modZ < 0 ? (distance + 1.0) : -distance, 0, 0.5);
-                break;
-            case EAST:
-            case WEST:
-                int modX = destGate.getDirection().getModX();
-                location.setYaw(modX < 0 ? 90F : -90F);
-                location.add(0.5, 0, modX < 0 ? -distance : (distance + 1));
-        }
-
-        destGate.deactivatePortal();
-        player.teleport(location);
+        long start = System.nanoTime();
+        try {
+            playerPortalEvent.setCancelled(true);
+            Player player = playerPortalEvent.getPlayer();
+            Location playerLocation = player.getLocation();
+            GateManager gateManager = GateManager.getInstance();
+            List<Gate> gates = gateManager.getGatesNear(playerLocation, GateShapes.getMaxReach() + 1);
+            Gate activatedGate = null;
+            for (Gate gate : gates) {
+                if (gate.isInPortalArea(playerLocation)) {
+                    activatedGate = gate;
+                }
+            }
+
+            if (activatedGate == null) {
+                // portal does not belong to a gate; let it process normally
+                playerPortalEvent.setCancelled(false);
+                return;
+            }
+
+            Gate destGate = activatedGate.getSelectedDestination();
+            if (destGate == null || destGate.isRemoved()) {
+                return; // Destination has been destroyed since it was selected
+            }
+            PortalTraffic portalTraffic = PortalTraffic.getInstance();
+            if (!portalTraffic.tryEnter(player)) {
+                return; // Still standing in the portal since the last event
+            }
+            PortalIdleTimer.getInstance().touch(activatedGate);
+            portalTraffic.requestTeleport(player, activatedGate, destGate);
+        } finally {
+            finish(Metrics.PLAYER_PORTAL, start);
+        }
+    }
+
+    /**
+     * Forget players leaving the server
+     *
+     * @param playerQuitEvent event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent playerQuitEvent) {
+        long start = System.nanoTime();
+        try {
+            PortalTraffic.getInstance().forget(playerQuitEvent.getPlayer());
+        } finally {
+            finish(Metrics.PLAYER_QUIT, start);
+        }
     }
 
     /**
@@ -120,36 +325,33 @@ public class MainListener implements Listener {
      */
     @EventHandler
     public void onGateButtonClick(PlayerInteractEvent playerInteractEvent) {
-        Block clickedBlock = playerInteractEvent.getClickedBlock();
-        if (clickedBlock == null || clickedBlock.getType() != Material.STONE_BUTTON) {
-            return;
-        }
-        logger.log(Level.INFO, "Stone button was clicked");
+        long start = System.nanoTime();
+        try {
+            Block clickedBlock = playerInteractEvent.getClickedBlock();
+            if (clickedBlock == null || clickedBlock.getType() != Material.STONE_BUTTON) {
+                return;
+            }
 
-        // Once the gate class is done, check if the button belongs to a gate first
-        GateManager gateManager = GateManager.getInstance();
-        List<Gate> gates = gateManager.getActiveGates();
-        Gate clickedGate = null;
-        for (Gate gate : gates) {
-            if (gate.buttonBelongsToGate(clickedBlock)) {
-                clickedGate = gate;
-                break;
+            // Once the gate class is done, check if the button belongs to a gate first
+            GateManager gateManager = GateManager.getInstance();
+            Gate clickedGate = gateManager.getGateAt(clickedBlock);
+            if (clickedGate == null || !clickedGate.buttonBelongsToGate(clickedBlock)) {
+                // clicked sign did not belong to a gate
+                return;
             }
-        }
-        if (clickedGate == null) {
-            // clicked sign did not belong to a gate
-            return;
-        }
 
-        if (clickedGate.getSelectedDestination() == null) {
-            // No destination selected
-            return;
-        }
+            if (clickedGate.getSelectedDestination() == null || clickedGate.getSelectedDestination().isRemoved()) {
+                // No destination selected
+                return;
+            }
 
-        if (!clickedGate.portalIsActive()) {
-            clickedGate.activatePortal();
-        } else {
-            clickedGate.deactivatePortal();
+            if (!clickedGate.portalIsActive()) {
+                clickedGate.activatePortal();
+            } else {
+                clickedGate.deactivatePortal();
+            }
+        } finally {
+            finish(Metrics.BUTTON_CLICK, start);
         }
     }
 
@@ -160,28 +362,27 @@ public class MainListener implements Listener {
      */
     @EventHandler
     public void onSignInteract(PlayerInteractEvent playerInteractEvent) {
-        // Make sure the player is trying to use a gate
-        Block clickedBlock = playerInteractEvent.getClickedBlock();
-        if (clickedBlock == null || clickedBlock.getType() != Material.OAK_WALL_SIGN) {
-            return;
-        }
+        long start = System.nanoTime();
+        try {
+            // Make sure the player is trying to use a gate
+            Block clickedBlock = playerInteractEvent.getClickedBlock();
+            if (clickedBlock == null || clickedBlock.getType() != Material.OAK_WALL_SIGN) {
+                return;
+            }
 
-        GateManager gateManager = GateManager.getInstance();
-        List<Gate> gates = gateManager.getActiveGates();
-        Gate clickedGate = null;
-        for (Gate gate : gates) {
-            if (gate.signBelongsToGate(clickedBlock)) {
-                clickedGate = gate;
-                break;
+            GateManager gateManager = GateManager.getInstance();
+            Gate clickedGate = gateManager.getGateAt(clickedBlock);
+            if (clickedGate == null || !clickedGate.signBelongsToGate(clickedBlock)) {
+                // clicked sign did not belong to a gate
+                return;
             }
-        }
-        if (clickedGate == null) {
-            // clicked sign did not belong to a gate
-            return;
-        }
 
-        // Now we know the sign belongs to a gate; Ask the gate to set its sign state
-        clickedGate.selectDestination();
+            // Now we know the sign belongs to a gate; Ask the gate to set its sign state. Sneaking pages through the
+            // destinations a whole sign at a time
+            clickedGate.selectDestination(playerInteractEvent.getPlayer().isSneaking());
+        } finally {
+            finish(Metrics.SIGN_INTERACT, start);
+        }
     }
 
     /**
@@ -191,44 +392,98 @@ public class MainListener implements Listener {
      */
     @EventHandler
     public void onSignChange(SignChangeEvent signChangeEvent) {
-        // Return early if sign is wrong type
-        Block sign = signChangeEvent.getBlock();
-        if (sign.getType() != Material.OAK_WALL_SIGN) {
-            return;
-        }
+        long start = System.nanoTime();
+        try {
+            // Return early if sign is wrong type
+            Block sign = signChangeEvent.getBlock();
+            if (sign.getType() != Material.OAK_WALL_SIGN) {
+                return;
+            }
 
-        // Get the sign that changed, then get the block behind it
-        WallSign wallSign = (WallSign) signChangeEvent.getBlock().getBlockData();
-        BlockFace signFaceDirection = wallSign.getFacing();
-        Block placedAgainst = sign.getRelative(signFaceDirection.getOppositeFace());
-        if (placedAgainst.getType() != Material.OBSIDIAN) {
-            return;
-        }
-        logger.log(Level.INFO, "Sign placed against valid portal material; checking");
+            // Get the sign that changed, then get the block behind it
+            WallSign wallSign = (WallSign) signChangeEvent.getBlock().getBlockData();
+            BlockFace signFaceDirection = wallSign.getFacing();
+            Block placedAgainst = sign.getRelative(signFaceDirection.getOppositeFace());
+            if (!GateShapes.isFrameMaterial(placedAgainst.getType())) {
+                return;
+            }
+            Debug.log("Sign placed against valid portal material; checking");
 
-        // Check the blocks around the sign for portal pattern
-        // Assuming sign is placed on the right for now
-        boolean gateIsValid = Gate.checkBlocksAreValid(placedAgainst, signFaceDirection);
-        if (!gateIsValid) {
-            logger.log(Level.INFO, "Gate is not valid");
-            return;
-        }
+            // A sign starting with the search marker on the frame of an existing gate searches its destinations. Any
+            // other sign on the frame is left alone
+            Gate searchedGate = GateManager.getInstance().getGateAt(placedAgainst);
+            if (searchedGate != null) {
+                String firstLine = signChangeEvent.getLine(0);
+                if (firstLine != null && firstLine.startsWith(SEARCH_MARKER)) {
+                    searchDestinations(signChangeEvent, searchedGate,
+                            firstLine.substring(SEARCH_MARKER.length()));
+                }
+                return;
+            }
 
-        // Cancel the event to make the sign text update correctly
-        signChangeEvent.setCancelled(true);
-        String gateName = signChangeEvent.getLine(0);
-        if (gateName == null || gateName.equals("")) {
-            logger.log(Level.INFO, "All gates require a name in the top line of the sign");
-            return;
+            // Check the blocks around the sign for portal pattern
+            // Assuming sign is placed on the right for now
+            GateShape shape = Gate.findShape(placedAgainst, signFaceDirection);
+            if (shape == null) {
+                Debug.log("Gate is not valid");
+                return;
+            }
+
+            // Cancel the event to make the sign text update correctly
+            signChangeEvent.setCancelled(true);
+            String gateName = signChangeEvent.getLine(0);
+            if (gateName == null || gateName.equals("")) {
+                Debug.log("All gates require a name in the top line of the sign");
+                return;
+            }
+            if (!Gate.isValidName(gateName)) {
+                signChangeEvent.getPlayer().sendMessage("Gate names cannot contain :: or |");
+                return;
+            }
+
+            // The second line puts the gate in a network; gates only list destinations in their own network
+            String network = signChangeEvent.getLine(1);
+            if (network == null) {
+                network = "";
+            }
+            if (network.contains("::")) {
+                signChangeEvent.getPlayer().sendMessage("Network names cannot contain ::");
+                return;
+            }
+
+            Gate newGate = Gate.createGate(placedAgainst, signFaceDirection, gateName, shape, network);
+            if (newGate == null) {
+                signChangeEvent.getPlayer().sendMessage("Could not create gate " + gateName + ". This name already exists");
+                if (Debug.isEnabled()) {
+                    Debug.log("Could not create new gate: " + gateName + ". This name already exists");
+                }
+                return;
+            }
+            if (Debug.isEnabled()) {
+                Debug.log("Created new gate " + gateName);
+            }
+        } finally {
+            finish(Metrics.SIGN_CHANGE, start);
         }
+    }
 
-        logger.log(Level.INFO, "Creating new gate: " + gateName);
-        Gate newGate = Gate.createGate(placedAgainst, signFaceDirection, gateName);
-        if (newGate == null) {
-            signChangeEvent.getPlayer().sendMessage("Could not create gate " + gateName + ". This name already exists");
-            logger.log(Level.INFO, "Could not create new gate: " + gateName + ". This name already exists");
-            return;
+    /**
+     * Jump the sign of a gate to the first destination starting with the text after the search marker on a sign placed
+     * against its frame. The search sign is broken afterwards and drops as an item
+     *
+     * @param signChangeEvent event for the search sign
+     * @param gate            the gate whose frame the sign was placed against
+     * @param prefix          the start of the destination name
+     */
+    private void searchDestinations(SignChangeEvent signChangeEvent, Gate gate, String prefix) {
+        if (prefix.trim().isEmpty()) {
+            return; // Only the marker, so leave the sign as it is
+        }
+        signChangeEvent.setCancelled(true);
+        if (!gate.jumpToDestination(prefix)) {
+            signChangeEvent.getPlayer().sendMessage("No destination of " + gate.getName() + " starts with "
+                    + prefix.trim());
         }
-        logger.log(Level.INFO, "Created new gate " + gateName);
+        signChangeEvent.getBlock().breakNaturally();
     }
 }
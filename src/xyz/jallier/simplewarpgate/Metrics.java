@@ -0,0 +1,137 @@
+package xyz.jallier.simplewarpgate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every counter and latency histogram the plugin records. Metrics are created once here, so recording them only
+ * touches preallocated fields
+ */
+public final class Metrics {
+    private static final List<Counter> counters = new ArrayList<>();
+    private static final List<LatencyHistogram> histograms = new ArrayList<>();
+
+    public static final LatencyHistogram BLOCK_BREAK = histogram("block_break", "Handling block break events");
+    public static final LatencyHistogram ENTITY_EXPLODE = histogram("entity_explode", "Handling entity explosions");
+    public static final LatencyHistogram BLOCK_EXPLODE = histogram("block_explode", "Handling block explosions");
+    public static final LatencyHistogram PISTON_EXTEND = histogram("piston_extend", "Handling pistons extending");
+    public static final LatencyHistogram PISTON_RETRACT = histogram("piston_retract", "Handling pistons retracting");
+    public static final LatencyHistogram BLOCK_PLACE = histogram("block_place", "Handling block place events");
+    public static final LatencyHistogram ENTITY_CHANGE_BLOCK = histogram("entity_change_block",
+            "Handling entities changing blocks");
+    public static final LatencyHistogram BLOCK_BURN = histogram("block_burn", "Handling blocks burning");
+    public static final LatencyHistogram BLOCK_FROM_TO = histogram("block_from_to", "Handling liquids flowing");
+    public static final LatencyHistogram CHUNK_LOAD = histogram("chunk_load", "Handling chunk loads");
+    public static final LatencyHistogram WORLD_LOAD = histogram("world_load", "Creating gates in a loaded world");
+    public static final LatencyHistogram WORLD_UNLOAD = histogram("world_unload", "Letting go of gates in a world");
+    public static final LatencyHistogram PLAYER_PORTAL = histogram("player_portal", "Handling players in portals");
+    public static final LatencyHistogram PLAYER_QUIT = histogram("player_quit", "Handling players leaving");
+    public static final LatencyHistogram BUTTON_CLICK = histogram("button_click", "Handling gate button clicks");
+    public static final LatencyHistogram SIGN_INTERACT = histogram("sign_interact", "Handling gate sign clicks");
+    public static final LatencyHistogram SIGN_CHANGE = histogram("sign_change", "Handling signs being placed");
+    public static final LatencyHistogram CHECK_BLOCKS = histogram("check_blocks", "Checking a gate frame is valid");
+    public static final LatencyHistogram ACTIVATE_PORTAL = histogram("activate_portal", "Activating a portal");
+    public static final LatencyHistogram DEACTIVATE_PORTAL = histogram("deactivate_portal", "Deactivating a portal");
+    public static final LatencyHistogram SIGN_RENDER = histogram("sign_render", "Redrawing a gate sign");
+    public static final LatencyHistogram LOAD = histogram("load", "Loading the gate data");
+    public static final LatencyHistogram SAVE = histogram("save", "Saving the gate data on shutdown");
+    public static final LatencyHistogram COMPACT = histogram("compact", "Snapshotting gates for compaction");
+
+    public static final Counter TELEPORTS = counter("teleports", "Players teleported by a gate");
+    public static final Counter TELEPORTS_QUEUED = counter("teleports_queued",
+            "Players queued because their destination was full that tick");
+    public static final Counter GATES_CREATED = counter("gates_created", "Gates created by players");
+    public static final Counter GATES_DESTROYED = counter("gates_destroyed", "Gates destroyed in the world");
+    public static final Counter PORTAL_WRITES_QUEUED = counter("portal_writes_queued",
+            "Portal openings and closings put off to a later tick by the block budget");
+    public static final Counter PORTALS_IDLE_CLOSED = counter("portals_idle_closed",
+            "Portals closed because nobody used them for the idle timeout");
+
+    private Metrics() {
+    }
+
+    /**
+     * Create and register a latency histogram
+     *
+     * @param name name without the plugin prefix or unit
+     * @param help description of what is timed
+     * @return the histogram
+     */
+    private static LatencyHistogram histogram(String name, String help) {
+        LatencyHistogram histogram = new LatencyHistogram("simplewarpgate_" + name + "_seconds", help);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    /**
+     * Create and register a counter
+     *
+     * @param name name without the plugin prefix or suffix
+     * @param help description of what is counted
+     * @return the counter
+     */
+    private static Counter counter(String name, String help) {
+        Counter counter = new Counter("simplewarpgate_" + name + "_total", help);
+        counters.add(counter);
+        return counter;
+    }
+
+    /**
+     * Get every registered histogram
+     *
+     * @return list of histograms
+     */
+    public static List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(histograms);
+    }
+
+    /**
+     * Get every registered counter
+     *
+     * @return list of counters
+     */
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(counters);
+    }
+
+    /**
+     * Format every metric in the Prometheus text exposition format
+     *
+     * @return the metrics text
+     */
+    public static String formatPrometheus() {
+        StringBuilder text = new StringBuilder();
+        for (Counter counter : counters) {
+            text.append("# HELP ").append(counter.getName()).append(' ').append(counter.getHelp()).append('\n');
+            text.append("# TYPE ").append(counter.getName()).append(" counter\n");
+            text.append(counter.getName()).append(' ').append(counter.get()).append('\n');
+        }
+        for (LatencyHistogram histogram : histograms) {
+            String name = histogram.getName();
+            text.append("# HELP ").append(name).append(' ').append(histogram.getHelp()).append('\n');
+            text.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < histogram.getBucketCount(); i++) {
+                cumulative += histogram.getBucket(i);
+                long bound = LatencyHistogram.getBucketBoundNanos(i);
+                String le = bound == Long.MAX_VALUE ? "+Inf" : formatSeconds(bound);
+                text.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            text.append(name).append("_sum ").append(formatSeconds(histogram.getSumNanos())).append('\n');
+            text.append(name).append("_count ").append(cumulative).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Format nanoseconds as seconds
+     *
+     * @param nanos nanoseconds
+     * @return seconds as text
+     */
+    private static String formatSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos, 9).stripTrailingZeros().toPlainString();
+    }
+}
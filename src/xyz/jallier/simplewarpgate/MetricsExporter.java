@@ -0,0 +1,62 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+
+/**
+ * Writes the metrics to a Prometheus text file, for a node exporter textfile collector or similar to pick up. Runs off
+ * the main thread
+ */
+public class MetricsExporter implements Runnable {
+    /**
+     * Name of the file written in the plugin data folder
+     */
+    public static final String FILENAME = "metrics.prom";
+
+    private final File file;
+
+    /**
+     * Construct a new exporter
+     *
+     * @param dataFolder the plugin data folder
+     */
+    public MetricsExporter(File dataFolder) {
+        file = new File(dataFolder, FILENAME);
+    }
+
+    /**
+     * Write the metrics file. The file is replaced in one step so readers never see it half written
+     */
+    @Override
+    public void run() {
+        File directory = file.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not create " + directory + " for SimpleWarpGate metrics");
+            return;
+        }
+        File tempFile = new File(directory, FILENAME + ".tmp");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+                writer.write(Metrics.formatPrometheus());
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not write SimpleWarpGate metrics", e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Axis;
+import org.bukkit.Material;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.Orientable;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the opening of gates when their portals open and close. Each gate is written as one batch from block data
+ * made once per orientation or material, without physics. A portal block only survives physics if it is framed by
+ * obsidian, and gate shapes can use other frames, so physics is only applied to the last block of a closing portal to
+ * let the blocks around the opening react once.
+ * <p>
+ * Up to a number of blocks are written each tick. Changes past that wait for the next tick, so opening or closing many
+ * portals at once is spread out. A gate is only queued once, and is written as it is when its turn comes. On a region
+ * threaded server each gate is written straight away by the thread owning it instead
+ */
+public class PortalBlockWriter implements Runnable {
+    /**
+     * Maximum number of blocks to write each tick
+     */
+    public static final int MAX_BLOCKS_PER_TICK = 256;
+
+    private static final PortalBlockWriter portalBlockWriter = new PortalBlockWriter();
+
+    /**
+     * Gates waiting to be written, in the order they changed
+     */
+    private final Set<Gate> queued;
+    private final Map<Axis, BlockData> portalData;
+    private final Map<Material, BlockData> interiorData;
+    private int blocksThisTick;
+
+    private PortalBlockWriter() {
+        queued = new LinkedHashSet<>();
+        portalData = new EnumMap<>(Axis.class);
+        interiorData = new EnumMap<>(Material.class);
+    }
+
+    /**
+     * Get the writer
+     *
+     * @return the PortalBlockWriter instance
+     */
+    public static PortalBlockWriter getInstance() {
+        return portalBlockWriter;
+    }
+
+    /**
+     * Write the opening of a gate to match its portal state. The gate is written now if this tick's budget allows,
+     * otherwise it is queued
+     *
+     * @param gate the gate
+     */
+    public void update(Gate gate) {
+        GateScheduler scheduler = GateScheduler.getInstance();
+        if (scheduler.isRegionThreaded()) {
+            // Each region ticks on its own thread, so there is no shared tick budget to spread the writes over
+            scheduler.execute(gate, () -> write(gate));
+            return;
+        }
+        int blocks = gate.getMiddleBlockCount();
+        if (queued.isEmpty() && blocksThisTick + blocks <= MAX_BLOCKS_PER_TICK) {
+            write(gate);
+            blocksThisTick += blocks;
+        } else {
+            queued.add(gate);
+            Metrics.PORTAL_WRITES_QUEUED.increment();
+        }
+    }
+
+    /**
+     * Start a new tick and write queued gates
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        blocksThisTick = 0;
+        flush(MAX_BLOCKS_PER_TICK);
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Write queued gates until a number of blocks have been written this tick. At least one gate is written, so a gate
+     * bigger than the budget is not stuck
+     *
+     * @param budget maximum number of blocks to write this tick
+     * @return number of gates written
+     */
+    public int flush(int budget) {
+        int written = 0;
+        Iterator<Gate> iterator = queued.iterator();
+        while (iterator.hasNext() && (written == 0 || blocksThisTick < budget)) {
+            Gate gate = iterator.next();
+            iterator.remove();
+            if (!gate.isMaterialised()) {
+                continue; // Written when it is placed
+            }
+            write(gate);
+            blocksThisTick += gate.getMiddleBlockCount();
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Get the number of gates waiting to be written
+     *
+     * @return number of queued gates
+     */
+    public int getQueuedCount() {
+        return queued.size();
+    }
+
+    private void write(Gate gate) {
+        if (gate.portalIsActive()) {
+            gate.writeMiddleBlocks(getPortalData(gate.getDirection()), false);
+        } else {
+            gate.writeMiddleBlocks(getInteriorData(gate.getShape().getInterior()), true);
+        }
+    }
+
+    /**
+     * Get the portal block for a gate facing a direction. The portal runs across the direction the gate faces
+     */
+    private synchronized BlockData getPortalData(BlockFace direction) {
+        Axis axis = direction == BlockFace.EAST || direction == BlockFace.WEST ? Axis.Z : Axis.X;
+        BlockData data = portalData.get(axis);
+        if (data == null) {
+            Orientable orientable = (Orientable) Material.NETHER_PORTAL.createBlockData();
+            orientable.setAxis(axis);
+            data = orientable;
+            portalData.put(axis, data);
+        }
+        return data;
+    }
+
+    private synchronized BlockData getInteriorData(Material material) {
+        BlockData data = interiorData.get(material);
+        if (data == null) {
+            data = material.createBlockData();
+            interiorData.put(material, data);
+        }
+        return data;
+    }
+}
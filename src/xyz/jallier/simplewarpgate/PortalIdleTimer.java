@@ -0,0 +1,131 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Closes portals that have not been used for a while, so open portals do not sit in the world spawning mobs and
+ * catching entities. Open gates are kept in a timing wheel of one slot per tick, turned by a single repeating task, so
+ * each tick only looks at the gates in one slot.
+ * <p>
+ * Using a portal only moves its deadline. The gate stays in its slot, and is moved to the slot of its new deadline when
+ * the wheel reaches it, so a busy portal is moved at most once per timeout instead of on every use
+ */
+public class PortalIdleTimer implements Runnable {
+    /**
+     * Seconds a portal stays open without being used, unless set in the config
+     */
+    public static final int DEFAULT_TIMEOUT_SECONDS = 120;
+    /**
+     * Number of slots in the wheel. Timeouts longer than this many ticks pass the gate round the wheel more than once
+     */
+    private static final int WHEEL_SIZE = 4096;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final PortalIdleTimer portalIdleTimer = new PortalIdleTimer();
+
+    /**
+     * Gates to look at when the wheel reaches each slot. Slots are created the first time a gate is put in them
+     */
+    private final List<List<Gate>> wheel;
+    private long timeoutTicks;
+    private long tick;
+
+    private PortalIdleTimer() {
+        wheel = new ArrayList<>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(null);
+        }
+        timeoutTicks = DEFAULT_TIMEOUT_SECONDS * 20L;
+        tick = 0;
+    }
+
+    /**
+     * Get the idle timer
+     *
+     * @return the PortalIdleTimer instance
+     */
+    public static PortalIdleTimer getInstance() {
+        return portalIdleTimer;
+    }
+
+    /**
+     * Set how long portals stay open without being used. Portals already open keep their current deadline until next
+     * used
+     *
+     * @param timeoutTicks ticks before an unused portal closes, or 0 to never close portals
+     */
+    public synchronized void setTimeoutTicks(long timeoutTicks) {
+        this.timeoutTicks = Math.max(0, timeoutTicks);
+    }
+
+    /**
+     * Record that a portal was opened or used, putting off closing it
+     *
+     * @param gate the gate
+     */
+    public synchronized void touch(Gate gate) {
+        if (timeoutTicks == 0) {
+            return;
+        }
+        long deadline = tick + timeoutTicks;
+        gate.setIdleDeadline(deadline);
+        if (!gate.isIdleScheduled()) {
+            gate.setIdleScheduled(true);
+            schedule(gate, deadline);
+        }
+    }
+
+    /**
+     * Turn the wheel one tick and close the portals that have been idle too long
+     */
+    @Override
+    public synchronized void run() {
+        long start = System.nanoTime();
+        tick++;
+        int slot = (int) (tick & WHEEL_MASK);
+        List<Gate> due = wheel.get(slot);
+        if (due == null || due.isEmpty()) {
+            return;
+        }
+        // Gates are never rescheduled into the slot being worked through, see schedule
+        for (int i = 0; i < due.size(); i++) {
+            Gate gate = due.get(i);
+            if (gate.isRemoved() || !gate.portalIsActive()) {
+                gate.setIdleScheduled(false);
+            } else if (gate.getIdleDeadline() > tick) {
+                schedule(gate, gate.getIdleDeadline()); // Used since it was scheduled
+            } else {
+                gate.setIdleScheduled(false);
+                GateScheduler.getInstance().execute(gate, () -> closeIdlePortal(gate));
+            }
+        }
+        due.clear();
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Close a portal that has been idle too long. Runs on the thread owning the gate
+     *
+     * @param gate the gate
+     */
+    private static void closeIdlePortal(Gate gate) {
+        if (gate.isRemoved() || !gate.portalIsActive()) {
+            return;
+        }
+        gate.deactivatePortal();
+        Metrics.PORTALS_IDLE_CLOSED.increment();
+    }
+
+    private void schedule(Gate gate, long deadline) {
+        // A deadline a turn or more away is put in the last slot of this turn and moved on from there
+        long due = Math.min(deadline, tick + WHEEL_SIZE - 1);
+        int slot = (int) (due & WHEEL_MASK);
+        List<Gate> gates = wheel.get(slot);
+        if (gates == null) {
+            gates = new ArrayList<>();
+            wheel.set(slot, gates);
+        }
+        gates.add(gate);
+    }
+}
@@ -0,0 +1,303 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Controls players travelling through portals. Each player is only handled once per cooldown while they stand in a
+ * portal, and only a few players arrive at each gate per tick; the rest wait in a queue for the following ticks.
+ * Players arrive on the thread owning the destination gate, which on a region threaded server may not be the one that
+ * handled them entering the portal. Who arrives is decided under the lock, but the arrivals happen after it is
+ * released, as they call listeners and may run inline
+ */
+public class PortalTraffic implements Runnable {
+    /**
+     * Ticks to ignore a player's portal events after they were handled. 2 seconds
+     */
+    public static final int COOLDOWN_TICKS = 40;
+    /**
+     * Maximum number of players arriving at one gate each tick
+     */
+    public static final int MAX_ARRIVALS_PER_TICK = 2;
+    /**
+     * How often expired cooldowns are removed. 1 second
+     */
+    private static final int CLEANUP_INTERVAL_TICKS = 20;
+
+    private static final PortalTraffic portalTraffic = new PortalTraffic();
+
+    /**
+     * The tick each player's cooldown ends on
+     */
+    private final Map<UUID, Long> cooldowns;
+    /**
+     * Players waiting to arrive at each gate. Only holds gates players arrived at or are waiting for this tick
+     */
+    private final Map<Gate, Arrivals> arrivals;
+    /**
+     * Players waiting in any queue
+     */
+    private final Set<UUID> queuedPlayers;
+    private long tick;
+
+    /**
+     * Players arriving at a gate
+     */
+    private static class Arrivals {
+        private final ArrayDeque<Player> waiting = new ArrayDeque<>();
+        private long tick;
+        private int admitted;
+    }
+
+    /**
+     * A player let through to a gate, waiting to be teleported once the lock is released
+     */
+    private static class Admission {
+        private final Player player;
+        private final Gate destination;
+
+        Admission(Player player, Gate destination) {
+            this.player = player;
+            this.destination = destination;
+        }
+    }
+
+    private PortalTraffic() {
+        cooldowns = new HashMap<>();
+        arrivals = new HashMap<>();
+        queuedPlayers = new HashSet<>();
+        tick = 0;
+    }
+
+    /**
+     * Get the portal traffic controller
+     *
+     * @return the PortalTraffic instance
+     */
+    public static PortalTraffic getInstance() {
+        return portalTraffic;
+    }
+
+    /**
+     * Check if a player's portal event should be handled, and start their cooldown if so
+     *
+     * @param player the player standing in a portal
+     * @return false if the player was handled recently or is waiting to arrive
+     */
+    public synchronized boolean tryEnter(Player player) {
+        UUID uuid = player.getUniqueId();
+        if (queuedPlayers.contains(uuid)) {
+            return false;
+        }
+        Long until = cooldowns.get(uuid);
+        if (until != null && until > tick) {
+            return false;
+        }
+        cooldowns.put(uuid, tick + COOLDOWN_TICKS);
+        return true;
+    }
+
+    /**
+     * Send a player to a destination gate, now if the gate has room this tick or otherwise once it does
+     *
+     * @param player      the player
+     * @param source      the gate travelling from
+     * @param destination the gate travelling to
+     */
+    public void requestTeleport(Player player, Gate source, Gate destination) {
+        if (admit(player, destination)) {
+            teleport(player, source, destination);
+        } else {
+            Metrics.TELEPORTS_QUEUED.increment();
+            FlightRecorder.getInstance().record(GateEventType.TELEPORT_QUEUED, destination, player.getUniqueId(), 0);
+        }
+    }
+
+    /**
+     * Let a player through to a gate if it has room this tick, or add them to its queue
+     *
+     * @param player      the player
+     * @param destination the gate travelling to
+     * @return true if the player can arrive now, false if they were queued
+     */
+    private synchronized boolean admit(Player player, Gate destination) {
+        Arrivals gateArrivals = arrivals.get(destination);
+        if (gateArrivals == null) {
+            gateArrivals = new Arrivals();
+            arrivals.put(destination, gateArrivals);
+        }
+        if (gateArrivals.tick != tick) {
+            gateArrivals.tick = tick;
+            gateArrivals.admitted = 0;
+        }
+        if (gateArrivals.waiting.isEmpty() && gateArrivals.admitted < MAX_ARRIVALS_PER_TICK) {
+            gateArrivals.admitted++;
+            return true;
+        }
+        gateArrivals.waiting.add(player);
+        queuedPlayers.add(player.getUniqueId());
+        return false;
+    }
+
+    /**
+     * Let the waiting players arrive, up to the limit for each gate
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        List<Admission> admissions = admitWaiting();
+        for (int i = 0; i < admissions.size(); i++) {
+            Admission admission = admissions.get(i);
+            teleport(admission.player, null, admission.destination);
+        }
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Move to the next tick and take the waiting players that can arrive now, up to the limit for each gate
+     *
+     * @return the players to teleport
+     */
+    private synchronized List<Admission> admitWaiting() {
+        tick++;
+        List<Admission> admissions = Collections.emptyList();
+        Iterator<Map.Entry<Gate, Arrivals>> iterator = arrivals.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Gate, Arrivals> entry = iterator.next();
+            Gate destination = entry.getKey();
+            Arrivals gateArrivals = entry.getValue();
+            gateArrivals.tick = tick;
+            gateArrivals.admitted = 0;
+            while (gateArrivals.admitted < MAX_ARRIVALS_PER_TICK && !gateArrivals.waiting.isEmpty()) {
+                Player player = gateArrivals.waiting.poll();
+                queuedPlayers.remove(player.getUniqueId());
+                if (!player.isOnline()) {
+                    continue;
+                }
+                gateArrivals.admitted++;
+                if (admissions.isEmpty()) {
+                    admissions = new ArrayList<>();
+                }
+                admissions.add(new Admission(player, destination));
+            }
+            if (gateArrivals.waiting.isEmpty()) {
+                iterator.remove();
+            }
+        }
+        if (tick % CLEANUP_INTERVAL_TICKS == 0) {
+            cooldowns.values().removeIf(until -> until <= tick);
+        }
+        return admissions;
+    }
+
+    /**
+     * Forget a player, such as when they leave the server
+     *
+     * @param player the player
+     */
+    public synchronized void forget(Player player) {
+        UUID uuid = player.getUniqueId();
+        cooldowns.remove(uuid);
+        if (queuedPlayers.remove(uuid)) {
+            for (Arrivals gateArrivals : arrivals.values()) {
+                gateArrivals.waiting.removeIf(waiting -> waiting.getUniqueId().equals(uuid));
+            }
+        }
+    }
+
+    /**
+     * Get the number of players waiting to arrive
+     *
+     * @return number of players
+     */
+    public synchronized int getQueuedCount() {
+        return queuedPlayers.size();
+    }
+
+    /**
+     * Teleport a player to the arrival location of a gate
+     *
+     * @param player      the player
+     * @param source      the gate travelling from, or null if the player waited in a queue
+     * @param destination the gate travelling to
+     */
+    private void teleport(Player player, Gate source, Gate destination) {
+        // Arriving touches the destination's blocks, so it happens on the thread that owns them
+        GateScheduler.getInstance().execute(destination, () -> arrive(player, source, destination),
+                () -> cannotArrive(player, destination));
+    }
+
+    /**
+     * Tell a player their destination could not be reached because its world is not loaded, and start their cooldown
+     * again so they are not sent again straight away
+     *
+     * @param player      the player
+     * @param destination the gate travelling to
+     */
+    private void cannotArrive(Player player, Gate destination) {
+        player.sendMessage("Gate " + destination.getName() + " cannot be reached while its world is not loaded");
+        startCooldown(player);
+    }
+
+    /**
+     * Open the way at the destination gate and move the player there. Runs on the thread owning the destination
+     *
+     * @param player      the player
+     * @param source      the gate travelling from, or null if the player waited in a queue
+     * @param destination the gate travelling to
+     */
+    private void arrive(Player player, Gate source, Gate destination) {
+        long start = System.nanoTime();
+        if (destination.isRemoved()) {
+            return; // Destination has been destroyed since the player entered the portal
+        }
+        Location location = destination.getArrivalLocation();
+        if (location == null) {
+            player.sendMessage("Gate " + destination.getName() + " is obstructed; there is nowhere safe to arrive");
+            return;
+        }
+        if (GateTeleportEvent.hasListeners()) {
+            // A copy, as the arrival location is kept on the gate
+            GateTeleportEvent event = new GateTeleportEvent(player, source, destination, location.clone());
+            Bukkit.getPluginManager().callEvent(event);
+            if (event.isCancelled()) {
+                return;
+            }
+            location = event.getTo();
+        }
+
+        if (source != null) {
+            // Keep the destination loaded for anyone following through the portal
+            ChunkPrewarmer.getInstance().prewarm(source, destination);
+        }
+        if (destination.portalIsActive()) {
+            destination.deactivatePortal();
+        }
+        GateScheduler.getInstance().teleport(player, location);
+        Metrics.TELEPORTS.increment();
+        FlightRecorder.getInstance().record(GateEventType.TELEPORT, destination, player.getUniqueId(),
+                System.nanoTime() - start);
+        startCooldown(player);
+    }
+
+    /**
+     * Start a player's cooldown again once they have left the portal, so it counts from when they arrive
+     *
+     * @param player the player
+     */
+    private synchronized void startCooldown(Player player) {
+        cooldowns.put(player.getUniqueId(), tick + COOLDOWN_TICKS);
+    }
+}
@@ -0,0 +1,273 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redraws gate signs in the background. When a gate joins or leaves a network, the signs of that network are swept, a
+ * limited number each tick, so adding or removing a gate does not update every sign at once. A change during a sweep
+ * does not start it again from the first gate: it carries on from where it was and goes once round the whole network,
+ * so every sign is reached however often the network changes
+ */
+public class SignRenderScheduler implements Runnable {
+    /**
+     * Maximum number of signs to redraw each tick
+     */
+    public static final int MAX_SIGN_UPDATES_PER_TICK = 20;
+
+    private static final SignRenderScheduler signRenderScheduler = new SignRenderScheduler();
+
+    /**
+     * Gates marked individually, in the order they were marked. Marking the same gate twice only redraws it once
+     */
+    private final Set<Gate> dirtyGates;
+    /**
+     * Gates waiting for their sign chunk to load
+     */
+    private final ChunkWaitList waitingForChunk;
+    /**
+     * Normalised names of the networks that have changed since the last tick, whose signs all need to be redrawn
+     */
+    private final Set<String> changedNetworks;
+    /**
+     * The sweep of each network whose signs are being redrawn, keyed by normalised network name
+     */
+    private final Map<String, Sweep> sweeps;
+
+    /**
+     * A pass over the gates of a network, going round from wherever it is until every gate has been visited
+     */
+    private static class Sweep {
+        /**
+         * The gates of the network when it last changed, sorted by name
+         */
+        private List<Gate> gates = Collections.emptyList();
+        /**
+         * Position of the next gate to redraw
+         */
+        private int index;
+        /**
+         * Number of gates still to redraw
+         */
+        private int remaining;
+
+        /**
+         * Take the latest gates of the network and go once round them, starting at the gate the sweep had reached
+         *
+         * @param newGates the gates in the network, sorted by name
+         */
+        void restart(List<Gate> newGates) {
+            if (index < gates.size()) {
+                // The lists are sorted by name, so the next gate's place is found in the new list by its name
+                index = Gate.lowerBound(newGates, gates.get(index).getNameKey());
+            } else {
+                index = 0;
+            }
+            gates = newGates;
+            remaining = newGates.size();
+        }
+
+        /**
+         * Get the next gate to redraw
+         *
+         * @return the gate
+         */
+        Gate next() {
+            if (index >= gates.size()) {
+                index = 0;
+            }
+            remaining--;
+            return gates.get(index++);
+        }
+
+        /**
+         * Check if every gate has been visited
+         *
+         * @return if the sweep is finished
+         */
+        boolean isDone() {
+            return remaining <= 0;
+        }
+    }
+
+    private SignRenderScheduler() {
+        dirtyGates = new LinkedHashSet<>();
+        waitingForChunk = new ChunkWaitList();
+        changedNetworks = ConcurrentHashMap.newKeySet();
+        sweeps = new LinkedHashMap<>();
+    }
+
+    /**
+     * Get the scheduler
+     *
+     * @return the SignRenderScheduler instance
+     */
+    public static SignRenderScheduler getInstance() {
+        return signRenderScheduler;
+    }
+
+    /**
+     * Mark a single gate sign to be redrawn
+     *
+     * @param gate the gate
+     */
+    public synchronized void markDirty(Gate gate) {
+        dirtyGates.add(gate);
+    }
+
+    /**
+     * Mark the signs of every gate in a network to be redrawn. Multiple changes to a network in the same tick only
+     * cause one pass over its gates. Does not lock, so it can be called while the gate manager is being changed
+     *
+     * @param networkKey the normalised network name
+     */
+    public void markNetworkChanged(String networkKey) {
+        changedNetworks.add(networkKey);
+    }
+
+    /**
+     * Queue the gates that were waiting for a chunk to load
+     *
+     * @param chunk the chunk that loaded
+     */
+    public synchronized void onChunkLoad(Chunk chunk) {
+        Set<Gate> waiting = waitingForChunk.release(chunk);
+        if (waiting != null) {
+            dirtyGates.addAll(waiting);
+        }
+    }
+
+    /**
+     * Stop waiting for chunks in a world that has unloaded
+     *
+     * @param world the world
+     */
+    public synchronized void onWorldUnload(World world) {
+        waitingForChunk.removeWorld(world);
+    }
+
+    /**
+     * Redraw signs for this tick
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        flush(MAX_SIGN_UPDATES_PER_TICK);
+        FlightRecorder.getInstance().addWorkSince(start);
+    }
+
+    /**
+     * Redraw up to a number of dirty signs
+     *
+     * @param budget maximum number of signs to redraw
+     * @return number of signs redrawn
+     */
+    public synchronized int flush(int budget) {
+        if (!changedNetworks.isEmpty()) {
+            GateManager gateManager = GateManager.getInstance();
+            Iterator<String> networks = changedNetworks.iterator();
+            while (networks.hasNext()) {
+                String networkKey = networks.next();
+                networks.remove();
+                Sweep sweep = sweeps.get(networkKey);
+                if (sweep == null) {
+                    sweep = new Sweep();
+                    sweeps.put(networkKey, sweep);
+                }
+                sweep.restart(gateManager.getNetworkGates(networkKey));
+            }
+        }
+
+        int rendered = 0;
+        Iterator<Gate> iterator = dirtyGates.iterator();
+        while (rendered < budget && iterator.hasNext()) {
+            Gate gate = iterator.next();
+            iterator.remove();
+            if (render(gate)) {
+                rendered++;
+            }
+        }
+        Iterator<Sweep> sweepIterator = sweeps.values().iterator();
+        while (rendered < budget && sweepIterator.hasNext()) {
+            Sweep sweep = sweepIterator.next();
+            while (rendered < budget && !sweep.isDone()) {
+                if (render(sweep.next())) {
+                    rendered++;
+                }
+            }
+            if (sweep.isDone()) {
+                sweepIterator.remove();
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Redraw a gate sign, or park it until its chunk loads
+     *
+     * @param gate the gate
+     * @return if the sign was redrawn
+     */
+    private boolean render(Gate gate) {
+        if (gate.isRemoved() || !gate.isMaterialised()) {
+            return false; // Gates are marked dirty again once they are placed in the world
+        }
+        GateScheduler scheduler = GateScheduler.getInstance();
+        if (scheduler.isRegionThreaded()) {
+            scheduler.execute(gate, () -> draw(gate));
+            return true;
+        }
+        return draw(gate);
+    }
+
+    /**
+     * Redraw a gate sign now, or park it until its chunk loads. Runs on the thread owning the gate
+     *
+     * @param gate the gate
+     * @return if the sign was redrawn
+     */
+    private boolean draw(Gate gate) {
+        if (gate.isRemoved()) {
+            return false;
+        }
+        if (!gate.isSignChunkLoaded()) {
+            park(gate);
+            return false;
+        }
+        long start = System.nanoTime();
+        gate.refreshSign();
+        long nanos = System.nanoTime() - start;
+        Metrics.SIGN_RENDER.record(nanos);
+        FlightRecorder.getInstance().record(GateEventType.SIGN_RENDERED, gate, null, nanos);
+        return true;
+    }
+
+    /**
+     * Hold a gate until the chunk with its sign is loaded
+     *
+     * @param gate the gate
+     */
+    private synchronized void park(Gate gate) {
+        long signKey = gate.getSignKey();
+        long chunkKey = GateSpatialIndex.chunkKey(BlockKey.getX(signKey) >> 4, BlockKey.getZ(signKey) >> 4);
+        waitingForChunk.add(gate.getKey().getWorldIndex(), chunkKey, gate);
+    }
+
+    /**
+     * Check if there are signs waiting to be redrawn in loaded chunks
+     *
+     * @return if there is pending work
+     */
+    public synchronized boolean hasPendingWork() {
+        return !changedNetworks.isEmpty() || !dirtyGates.isEmpty() || !sweeps.isEmpty();
+    }
+}
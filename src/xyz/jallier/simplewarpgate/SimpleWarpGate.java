@@ -1,23 +1,75 @@
 package xyz.jallier.simplewarpgate;
 
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class SimpleWarpGate extends JavaPlugin {
+    /**
+     * How often the journal is checked for folding into the data file. 5 minutes
+     */
+    private static final long COMPACTION_INTERVAL_TICKS = 20L * 60 * 5;
+    /**
+     * How often idle prewarmed chunks are released. 1 second
+     */
+    private static final long PREWARM_SWEEP_INTERVAL_TICKS = 20L;
+    /**
+     * How often the metrics file is written. 1 minute
+     */
+    private static final long METRICS_EXPORT_INTERVAL_TICKS = 20L * 60;
+
     @Override
     public void onEnable() {
         this.getLogger().log(Level.INFO, "Loading SimpleWarpGate...");
+        this.saveDefaultConfig();
+        FileConfiguration config = this.getConfig();
+        Debug.setEnabled(config.getBoolean("debug", false));
+        GateScheduler.getInstance().start(this);
+        GateShapes.load(config.getConfigurationSection("gate-shapes"));
         GateManager.getInstance().loadStateFromFile();
         this.getLogger().log(Level.INFO, "Reading the data storage file");
+        GateManager.getInstance().startJournal();
+        ChunkPrewarmer.getInstance().start(this);
 
         this.getServer().getPluginManager().registerEvents(new MainListener(), this);
+        this.getServer().getServicesManager().register(GateService.class, new GateService(), this,
+                ServicePriority.Normal);
+        this.getCommand("swg").setExecutor(new SwgCommand());
+        GateScheduler scheduler = GateScheduler.getInstance();
+        scheduler.runRepeating(GateMaterialiser.getInstance(), 1L, 1L);
+        scheduler.runRepeating(SignRenderScheduler.getInstance(), 1L, 1L);
+        scheduler.runRepeating(PortalBlockWriter.getInstance(), 1L, 1L);
+        PortalIdleTimer.getInstance().setTimeoutTicks(
+                config.getLong("portal-idle-timeout-seconds", PortalIdleTimer.DEFAULT_TIMEOUT_SECONDS) * 20L);
+        scheduler.runRepeating(PortalIdleTimer.getInstance(), 1L, 1L);
+        scheduler.runRepeating(PortalTraffic.getInstance(), 1L, 1L);
+        scheduler.runRepeating(() -> GateManager.getInstance().compactIfNeeded(),
+                COMPACTION_INTERVAL_TICKS, COMPACTION_INTERVAL_TICKS);
+        scheduler.runRepeating(ChunkPrewarmer.getInstance(), PREWARM_SWEEP_INTERVAL_TICKS,
+                PREWARM_SWEEP_INTERVAL_TICKS);
+        scheduler.runRepeatingAsync(new MetricsExporter(this.getDataFolder()),
+                METRICS_EXPORT_INTERVAL_TICKS, METRICS_EXPORT_INTERVAL_TICKS);
+        if (scheduler.isRegionThreaded()) {
+            // Work on region threads runs in parallel, so adding it all up against one tick's budget means nothing
+            this.getLogger().log(Level.INFO, "The tick watchdog is off on region threaded servers");
+        } else {
+            long tickBudgetNanos = (long) (config.getDouble("watchdog.tick-budget-ms", 5.0) * 1_000_000L);
+            long watchdogCooldownMillis = TimeUnit.SECONDS.toMillis(config.getLong("watchdog.cooldown-seconds", 60));
+            scheduler.runRepeating(new TickWatchdog(new File(this.getDataFolder(), "flight-recorder"),
+                    tickBudgetNanos, watchdogCooldownMillis), 1L, 1L);
+        }
 
         this.getLogger().log(Level.INFO, "SimpleWarpGate loaded!");
     }
 
     @Override
     public void onDisable() {
+        this.getServer().getServicesManager().unregisterAll(this);
+        ChunkPrewarmer.getInstance().stop();
         GateManager.getInstance().writeStateToFile();
         this.getLogger().log(Level.INFO, "Wrote the data storage file");
     }
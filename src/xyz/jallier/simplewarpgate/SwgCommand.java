@@ -0,0 +1,86 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.Locale;
+
+/**
+ * Handles the /swg command
+ */
+public class SwgCommand implements CommandExecutor {
+    /**
+     * Handle the command
+     *
+     * @param sender  who ran the command
+     * @param command the command
+     * @param label   the alias used
+     * @param args    the arguments
+     * @return false to show the usage message
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            sendStats(sender);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Send the counters, and the count and latency of everything that has been timed
+     *
+     * @param sender who to send to
+     */
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage(ChatColor.GOLD + "SimpleWarpGate stats");
+        GateManager gateManager = GateManager.getInstance();
+        sender.sendMessage("Gates: " + gateManager.getActiveGates().size()
+                + ", put away: " + gateManager.getDormantCount()
+                + ", waiting to arrive: " + PortalTraffic.getInstance().getQueuedCount()
+                + ", chunk tickets: " + ChunkPrewarmer.getInstance().getTicketCount());
+        for (Counter counter : Metrics.getCounters()) {
+            sender.sendMessage(shortName(counter.getName(), "_total") + ": " + counter.get());
+        }
+        for (LatencyHistogram histogram : Metrics.getHistograms()) {
+            long count = histogram.getCount();
+            if (count == 0) {
+                continue;
+            }
+            sender.sendMessage(String.format(Locale.ROOT, "%s: %d calls, mean %s, p50 <%s, p99 <%s",
+                    shortName(histogram.getName(), "_seconds"), count,
+                    formatNanos(histogram.getSumNanos() / count),
+                    formatNanos(histogram.getQuantileNanos(0.5)),
+                    formatNanos(histogram.getQuantileNanos(0.99))));
+        }
+    }
+
+    /**
+     * Strip the plugin prefix and unit from a metric name
+     *
+     * @param name   metric name
+     * @param suffix suffix to strip
+     * @return short name
+     */
+    private static String shortName(String name, String suffix) {
+        return name.substring("simplewarpgate_".length(), name.length() - suffix.length());
+    }
+
+    /**
+     * Format a duration for chat
+     *
+     * @param nanos duration in nanoseconds
+     * @return formatted duration
+     */
+    private static String formatNanos(long nanos) {
+        if (nanos == Long.MAX_VALUE) {
+            return "inf";
+        }
+        if (nanos < 1_000_000L) {
+            return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+    }
+}
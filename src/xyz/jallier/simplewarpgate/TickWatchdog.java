@@ -0,0 +1,86 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Checks how long the plugin spent working each tick, and writes the flight recorder to disk when it goes over budget
+ */
+public class TickWatchdog implements Runnable {
+    private final File directory;
+    private final long budgetNanos;
+    private final long cooldownMillis;
+    private long lastRecording;
+
+    /**
+     * Construct a new watchdog
+     *
+     * @param directory      the directory to write recordings to
+     * @param budgetNanos    the most time the plugin should spend in a tick
+     * @param cooldownMillis the least time between two recordings
+     */
+    public TickWatchdog(File directory, long budgetNanos, long cooldownMillis) {
+        this.directory = directory;
+        this.budgetNanos = budgetNanos;
+        this.cooldownMillis = cooldownMillis;
+        lastRecording = 0;
+    }
+
+    /**
+     * Check the work done since the last tick
+     */
+    @Override
+    public void run() {
+        long work = FlightRecorder.getInstance().takeWork();
+        if (work <= budgetNanos) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastRecording < cooldownMillis) {
+            return;
+        }
+        lastRecording = now;
+        FlightRecorder.Snapshot snapshot = FlightRecorder.getInstance().snapshot();
+        GateScheduler.getInstance().runAsync(() -> write(snapshot, work, now));
+    }
+
+    /**
+     * Write a recording
+     *
+     * @param snapshot the flight recorder events
+     * @param work     time spent in the slow tick
+     * @param time     when the slow tick happened
+     */
+    private void write(FlightRecorder.Snapshot snapshot, long work, long time) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not create " + directory + " for SimpleWarpGate recordings");
+            return;
+        }
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(time)) + ".txt";
+        File file = new File(directory, name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write("# SimpleWarpGate spent " + TimeUnit.NANOSECONDS.toMicros(work) + "us in one tick, budget "
+                    + TimeUnit.NANOSECONDS.toMicros(budgetNanos) + "us\n");
+            writer.write("# time\ttype\tgate\tplayer\tnanos\n");
+            for (int i = 0; i < snapshot.size(); i++) {
+                writer.write(snapshot.format(i));
+                writer.write("\n");
+            }
+        } catch (IOException e) {
+            Bukkit.getLogger().log(Level.WARNING, "Could not write SimpleWarpGate recording " + file, e);
+            return;
+        }
+        Bukkit.getLogger().log(Level.WARNING, "SimpleWarpGate went over its tick budget; recent gate events written to "
+                + file);
+    }
+}
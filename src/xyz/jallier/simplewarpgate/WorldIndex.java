@@ -0,0 +1,72 @@
+package xyz.jallier.simplewarpgate;
+
+import org.bukkit.World;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Assigns each world a small integer id, so per world data can be stored in arrays instead of keyed by name. Ids can be
+ * looked up from any thread; only assigning a new one takes a lock
+ */
+public final class WorldIndex {
+    private static final Map<UUID, Integer> ids = new ConcurrentHashMap<>();
+    private static final List<UUID> worlds = new CopyOnWriteArrayList<>();
+
+    private WorldIndex() {
+    }
+
+    /**
+     * Get the id of a world, assigning a new one if it has not been seen before
+     *
+     * @param world the world
+     * @return the world id
+     */
+    public static int getId(World world) {
+        return getId(world.getUID());
+    }
+
+    /**
+     * Get the id of a world, assigning a new one if it has not been seen before
+     *
+     * @param worldId the world UUID
+     * @return the world id
+     */
+    public static int getId(UUID worldId) {
+        Integer id = ids.get(worldId);
+        return id == null ? assignId(worldId) : id;
+    }
+
+    private static synchronized int assignId(UUID worldId) {
+        Integer id = ids.get(worldId);
+        if (id == null) {
+            id = worlds.size();
+            // Added to the list first, so an id is never seen before its world can be looked up from it
+            worlds.add(worldId);
+            ids.put(worldId, id);
+        }
+        return id;
+    }
+
+    /**
+     * Get the UUID of the world with an id
+     *
+     * @param id the world id
+     * @return the world UUID, or null if the id was never assigned
+     */
+    public static UUID getWorldId(int id) {
+        return id >= 0 && id < worlds.size() ? worlds.get(id) : null;
+    }
+
+    /**
+     * Get the number of ids assigned
+     *
+     * @return number of worlds seen
+     */
+    public static int size() {
+        return worlds.size();
+    }
+}
@@ -0,0 +1,136 @@
+package xyz.jallier.simplewarpgate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The gates of one loaded world, with the lookups by block position that only ever look in one world. Dropped as a
+ * whole when the world unloads
+ */
+public class WorldShard {
+    private final UUID worldId;
+    private final List<Gate> gates;
+    /**
+     * The gate owning each block. Keyed by the packed block position
+     */
+    private final LongObjectMap<Gate> blockOwners;
+    /**
+     * The gates whose arrival area includes each x/z column. Keyed by the packed column with y 0
+     */
+    private final LongObjectMap<Gate[]> arrivalColumns;
+
+    /**
+     * Construct a new, empty shard
+     *
+     * @param worldId UUID of the world
+     */
+    public WorldShard(UUID worldId) {
+        this.worldId = worldId;
+        gates = new ArrayList<>();
+        blockOwners = new LongObjectMap<>();
+        arrivalColumns = new LongObjectMap<>();
+    }
+
+    /**
+     * Add a gate and index its blocks
+     *
+     * @param gate the gate to add
+     */
+    public void add(Gate gate) {
+        gates.add(gate);
+        for (long key : gate.getOwnedBlockKeys()) {
+            blockOwners.put(key, gate);
+        }
+        for (long key : gate.getArrivalColumnKeys()) {
+            Gate[] columnGates = arrivalColumns.get(key);
+            if (columnGates == null) {
+                arrivalColumns.put(key, new Gate[]{gate});
+            } else if (!containsGate(columnGates, gate)) {
+                Gate[] newGates = Arrays.copyOf(columnGates, columnGates.length + 1);
+                newGates[columnGates.length] = gate;
+                arrivalColumns.put(key, newGates);
+            }
+        }
+    }
+
+    /**
+     * Remove a gate and its blocks from the indexes
+     *
+     * @param gate the gate to remove
+     */
+    public void remove(Gate gate) {
+        gates.remove(gate);
+        for (long key : gate.getOwnedBlockKeys()) {
+            if (blockOwners.get(key) == gate) {
+                blockOwners.remove(key);
+            }
+        }
+        for (long key : gate.getArrivalColumnKeys()) {
+            Gate[] columnGates = arrivalColumns.get(key);
+            if (columnGates == null || !containsGate(columnGates, gate)) {
+                continue;
+            }
+            if (columnGates.length == 1) {
+                arrivalColumns.remove(key);
+                continue;
+            }
+            Gate[] newGates = new Gate[columnGates.length - 1];
+            int count = 0;
+            for (Gate other : columnGates) {
+                if (other != gate) {
+                    newGates[count++] = other;
+                }
+            }
+            arrivalColumns.put(key, newGates);
+        }
+    }
+
+    private static boolean containsGate(Gate[] gates, Gate gate) {
+        for (Gate other : gates) {
+            if (other == gate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the gate that owns a block
+     *
+     * @param blockKey packed block position
+     * @return the owning gate, or null if the block does not belong to a gate
+     */
+    public Gate getGateAt(long blockKey) {
+        return blockOwners.get(blockKey);
+    }
+
+    /**
+     * Get the gates whose arrival area includes a column
+     *
+     * @param columnKey packed column position with y 0
+     * @return the gates, or null if there are none. Not to be modified
+     */
+    public Gate[] getArrivalGates(long columnKey) {
+        return arrivalColumns.get(columnKey);
+    }
+
+    /**
+     * Get the gates in the world, in the order they were added
+     *
+     * @return list of gates, not to be modified
+     */
+    public List<Gate> getGates() {
+        return gates;
+    }
+
+    /**
+     * Get the UUID of the world
+     *
+     * @return world UUID
+     */
+    public UUID getWorldId() {
+        return worldId;
+    }
+}